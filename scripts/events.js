@@ -7,12 +7,21 @@
  {
  "event": "MESSAGE_RECEIVED",
  "handler": "handleMessage"
+ },
+ {
+ "event": "RAID_DETECTED",
+ "handler": "handleDetection"
+ },
+ {
+ "event": "SPAM_DETECTED",
+ "handler": "handleDetection"
  }
  ]
  */
 
 // event: JDA GuildMemberJoinEvent object
 // utils, db, http, scheduler: The standard utility objects
+// Welcome messages go through the global 'outbound' queue so that raids result in a few batched messages
 function handleMemberJoin(event, utils, db, http, scheduler) {
     const member = event.getMember();
     const guild = event.getGuild();
@@ -22,7 +31,7 @@ function handleMemberJoin(event, utils, db, http, scheduler) {
     if (welcomeChannel) {
         const embed = utils.createEmbed("Welcome!", `Please welcome ${member.getAsMention()} to ${guild.getName()}!`, utils.SUCCESS_COLOR);
         embed.setThumbnail(member.getUser().getEffectiveAvatarUrl());
-        welcomeChannel.sendMessageEmbeds(embed.build()).queue();
+        outbound.sendEmbed(welcomeChannel, embed.build());
     }
 
     // Log the join to the database
@@ -38,8 +47,26 @@ function handleMemberJoin(event, utils, db, http, scheduler) {
 
 // event: JDA MessageReceivedEvent object
 function handleMessage(event, utils, db) {
+    // Activity tracking; counters are batched in memory, so this does not write to the database per message
+    if (event.isFromGuild()) {
+        counters.increment("messages", event.getGuild().getId(), event.getAuthor().getId());
+        counters.touch("messages", event.getGuild().getId(), event.getAuthor().getId());
+    }
+
     const message = event.getMessage().getContentRaw();
     if (message.toLowerCase() === "hello mycelium") {
         event.getChannel().sendMessage(`Hello, ${event.getAuthor().getAsMention()}!`).queue();
     }
 }
+
+// event: DetectionEvent object, emitted by the core when a raid or spam threshold is crossed
+function handleDetection(event, utils, db) {
+    db.execute(
+        "INSERT INTO mod_logs (guild_id, moderator_id, target_id, action, reason) VALUES (?, ?, ?, ?, ?)",
+        event.getGuild().getId(),
+        "SYSTEM",
+        event.getUser().getId(),
+        event.getType(),
+        `Detected ${event.getCount()} ${event.getReason()} within the detection window.`
+    );
+}
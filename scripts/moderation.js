@@ -24,7 +24,7 @@
  "handler": "handleTempBan",
  "options": [
  { "type": "USER", "name": "user", "description": "The user to ban.", "required": true },
- { "type": "STRING", "name": "duration", "description": "How long the ban should last (e.g., 7d, 12h, 30m).", "required": true },
+ { "type": "STRING", "name": "duration", "description": "How long the ban should last (e.g., 7d, 12h, 30m).", "required": true, "autocomplete": "durations" },
  { "type": "STRING", "name": "reason", "description": "The reason for the temporary ban.", "required": false }
  ]
  },
@@ -43,7 +43,7 @@
  "handler": "handleTimeout",
  "options": [
  { "type": "USER", "name": "user", "description": "The user to timeout.", "required": true },
- { "type": "STRING", "name": "duration", "description": "The duration of the timeout (e.g., 10m, 1h, 2d).", "required": true },
+ { "type": "STRING", "name": "duration", "description": "The duration of the timeout (e.g., 10m, 1h, 2d).", "required": true, "autocomplete": "durations" },
  { "type": "STRING", "name": "reason", "description": "The reason for the timeout.", "required": false }
  ]
  },
@@ -55,6 +55,24 @@
  { "type": "USER", "name": "user", "description": "The user to remove the timeout from.", "required": true },
  { "type": "STRING", "name": "reason", "description": "The reason for removing the timeout.", "required": false }
  ]
+ },
+ {
+ "name": "modlogs",
+ "description": "Show a user's moderation history.",
+ "handler": "handleModLogs",
+ "options": [
+ { "type": "USER", "name": "user", "description": "The user to look up.", "required": true },
+ { "type": "INTEGER", "name": "before", "description": "Only show cases older than this case ID.", "required": false }
+ ]
+ },
+ {
+ "name": "modsearch",
+ "description": "Search moderation cases by keywords in their reason.",
+ "handler": "handleModSearch",
+ "options": [
+ { "type": "STRING", "name": "query", "description": "The keywords to search for.", "required": true },
+ { "type": "INTEGER", "name": "page", "description": "The page of results to show (starting at 1).", "required": false }
+ ]
  }
  ]
  */
@@ -62,6 +80,9 @@
 const Permission = Java.type('net.dv8tion.jda.api.Permission');
 const TimeUnit = Java.type('java.util.concurrent.TimeUnit');
 
+// Suggestions for the duration options, answered by the core without calling into this script
+autocomplete.replaceAll("durations", null, ["10m", "30m", "1h", "6h", "12h", "1d", "3d", "7d", "14d", "28d"]);
+
 // --- Command Handlers ---
 
 function handleKick(event, utils, db, http, scheduler, time) {
@@ -195,6 +216,44 @@ function handleRemoveTimeout(event, utils, db, http, scheduler, time) {
     });
 }
 
+function handleModLogs(event, utils, db, http, scheduler, time) {
+    if (!event.getMember().hasPermission(Permission.MODERATE_MEMBERS)) {
+        return event.getHook().sendMessageEmbeds(utils.createErrorEmbed("Permission Denied", "You do not have the `MODERATE_MEMBERS` permission.").build()).setEphemeral(true).queue();
+    }
+    const targetUser = event.getOption('user').getAsUser();
+    const before = event.getOption('before') ? event.getOption('before').getAsLong() : 0;
+    const guildId = event.getGuild().getId();
+
+    // Both lookups are served by indexes and the summary table, so they stay fast on large logs
+    const summary = JSON.parse(modLog.summary(guildId, targetUser.getId()));
+    const cases = JSON.parse(modLog.history(guildId, targetUser.getId(), before, 10));
+
+    const totals = Object.entries(summary).map(([action, count]) => `${action}: ${count}`).join(', ');
+    const embed = utils.createEmbed(`Moderation History for ${targetUser.getName()}`, totals.length > 0 ? totals : 'No cases on record.', utils.INFO_COLOR);
+    for (const entry of cases) {
+        embed.addField(`#${entry.id} ${entry.action}`, `${entry.reason || 'No reason provided.'} (<@${entry.moderator_id}>, ${entry.timestamp})`.substring(0, 1024), false);
+    }
+    if (cases.length === 10) {
+        embed.setFooter(`Use before:${cases[cases.length - 1].id} to see older cases.`);
+    }
+    event.getHook().sendMessageEmbeds(embed.build()).queue();
+}
+
+function handleModSearch(event, utils, db, http, scheduler, time) {
+    if (!event.getMember().hasPermission(Permission.MODERATE_MEMBERS)) {
+        return event.getHook().sendMessageEmbeds(utils.createErrorEmbed("Permission Denied", "You do not have the `MODERATE_MEMBERS` permission.").build()).setEphemeral(true).queue();
+    }
+    const query = event.getOption('query').getAsString();
+    const page = event.getOption('page') ? Math.max(1, event.getOption('page').getAsInt()) : 1;
+
+    const cases = JSON.parse(modLog.search(event.getGuild().getId(), query, page - 1, 10));
+    const embed = utils.createEmbed(`Cases matching "${query}"`.substring(0, 256), cases.length > 0 ? `Page ${page}` : 'No matching cases.', utils.INFO_COLOR);
+    for (const entry of cases) {
+        embed.addField(`#${entry.id} ${entry.action}`, `${entry.snippet} (<@${entry.target_id}>, ${entry.timestamp})`.substring(0, 1024), false);
+    }
+    event.getHook().sendMessageEmbeds(embed.build()).queue();
+}
+
 // This function is called by the scheduler for tempbans
 function executeUnban(jda, utils, db, http, scheduler, time) {
     const resultJson = db.query("SELECT * FROM mod_logs WHERE action = 'SCHEDULED_UNBAN' ORDER BY timestamp DESC LIMIT 1");
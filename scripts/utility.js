@@ -3,7 +3,8 @@
  {
  "name": "ping",
  "description": "A simple ping-pong command to check bot latency.",
- "handler": "handlePing"
+ "handler": "handlePing",
+ "cache": { "ttlSeconds": 5, "scope": "user" }
  },
  {
  "name": "userinfo",
@@ -12,16 +13,20 @@
  "options": [
  { "type": "USER", "name": "user", "description": "The user to get info about (defaults to you).", "required": false }
  ]
+ },
+ {
+ "name": "snipe",
+ "description": "Shows the most recently deleted message in this channel.",
+ "handler": "handleSnipe"
  }
  ]
  */
 
-// Handler for the /ping command
+// Handler for the /ping command; the reply is returned so that repeated pings within a few seconds are answered from the cache
 function handlePing(event, utils) {
     const description = `Pong! Replying with the bot's current gateway latency.`;
     const embed = utils.createEmbed('Ping', description, utils.INFO_COLOR);
-    utils.addDefaultFooter(embed, event);
-    event.getHook().sendMessageEmbeds(embed.build()).queue();
+    return utils.addDefaultFooter(embed, event);
 }
 
 // Handler for the /userinfo command
@@ -37,6 +42,10 @@ function handleUserInfo(event, utils) {
 
     if (targetMember) {
         embed.addField('Joined Server', `<t:${targetMember.getTimeJoined().toEpochSecond()}:R>`, true);
+        const guildId = event.getGuild().getId();
+        const lastActive = counters.lastSeen('messages', guildId, targetUser.getId());
+        embed.addField('Messages', String(counters.get('messages', guildId, targetUser.getId())), true);
+        embed.addField('Last Active', lastActive > 0 ? `<t:${Math.floor(lastActive / 1000)}:R>` : 'Never', true);
         const roles = targetMember.getRoles().map(role => role.getAsMention()).join(', ');
         embed.addField('Roles', roles.length > 0 ? roles : 'None', false);
     }
@@ -44,3 +53,19 @@ function handleUserInfo(event, utils) {
     utils.addDefaultFooter(embed, event);
     event.getHook().sendMessageEmbeds(embed.build()).queue();
 }
+
+// Handler for the /snipe command; deleted messages come from the in-memory message history
+function handleSnipe(event, utils) {
+    const found = messageHistory.lastDeleted(event.getChannel().getId());
+    if (!found) {
+        event.getHook().sendMessageEmbeds(utils.createErrorEmbed('Nothing to Snipe', 'No recently deleted messages in this channel.').build()).setEphemeral(true).queue();
+        return;
+    }
+
+    const message = JSON.parse(found);
+    const embed = utils.createEmbed('Sniped Message', message.content || '*No text content*', utils.INFO_COLOR);
+    embed.addField('Author', `<@${message.author_id}>`, true);
+    embed.addField('Deleted', `<t:${Math.floor(message.deleted_at / 1000)}:R>`, true);
+    utils.addDefaultFooter(embed, event);
+    event.getHook().sendMessageEmbeds(embed.build()).queue();
+}
@@ -0,0 +1,203 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Mentions;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects join floods and message spam before any script is invoked.
+ * Every guild keeps a small ring of recent join times, and every active user a ring of
+ * their most recent messages stored as plain numbers (time, content hash, mention and link count).
+ * When a threshold is crossed, a {@link DetectionEvent} is returned for the caller to dispatch.
+ */
+public class AbuseDetector {
+    // How many messages a guild processes between sweeps of idle users
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final Map<Long, GuildState> guilds = new ConcurrentHashMap<>();
+    // Joins and messages across all guilds since the last sweep of idle guilds
+    private final AtomicInteger eventsSinceGuildSweep = new AtomicInteger();
+
+    /**
+     * Records a join and checks whether the guild is being raided.
+     * @return A "RAID_DETECTED" event the first time the threshold is crossed in a window, otherwise null.
+     */
+    public DetectionEvent onMemberJoin(GuildMemberJoinEvent event) {
+        BotConfig config = BotConfig.getInstance();
+        if (!config.isAntiRaidEnabled()) return null;
+        int threshold = Math.max(1, config.getRaidJoinThreshold());
+        long window = config.getRaidJoinWindowSeconds() * 1000L;
+        long now = System.currentTimeMillis();
+        sweepGuilds(now, config);
+
+        while (true) {
+            GuildState state = guilds.computeIfAbsent(event.getGuild().getIdLong(), id -> new GuildState());
+            synchronized (state) {
+                // Dropped by a sweep after it was looked up; the map now holds a fresh state, or will on the next try
+                if (state.evicted) continue;
+                state.lastActivity = now;
+                if (state.joinTimes.length != threshold) {
+                    state.joinTimes = new long[threshold];
+                    state.joinIndex = 0;
+                }
+                state.joinTimes[state.joinIndex] = now;
+                state.joinIndex = (state.joinIndex + 1) % threshold;
+
+                // The slot that will be overwritten next holds the oldest of the last 'threshold' joins
+                long oldest = state.joinTimes[state.joinIndex];
+                if (oldest == 0 || now - oldest > window || now - state.lastRaidAlert <= window) return null;
+                state.lastRaidAlert = now;
+            }
+            return new DetectionEvent(DetectionEvent.RAID_DETECTED, event.getGuild(), event.getUser(), "joins", threshold, event);
+        }
+    }
+
+    /**
+     * Records a guild message and checks its author for spam.
+     * @return A "SPAM_DETECTED" event the first time a threshold is crossed in a window, otherwise null.
+     */
+    public DetectionEvent onMessage(MessageReceivedEvent event) {
+        BotConfig config = BotConfig.getInstance();
+        if (!config.isAntiRaidEnabled() || !event.isFromGuild()) return null;
+        long window = config.getSpamWindowSeconds() * 1000L;
+        int capacity = Math.max(1, Math.max(config.getSpamMessageThreshold(), config.getSpamDuplicateThreshold()));
+        long now = System.currentTimeMillis();
+
+        Message message = event.getMessage();
+        String content = message.getContentRaw();
+        int hash = content.isBlank() ? 0 : content.strip().toLowerCase(Locale.ROOT).hashCode();
+        Mentions mentions = message.getMentions();
+        int mentionCount = mentions.getUsersBag().size() + mentions.getRolesBag().size() + (mentions.mentionsEveryone() ? 1 : 0);
+        int linkCount = countLinks(content);
+
+        sweepGuilds(now, config);
+        while (true) {
+            GuildState guild = guilds.computeIfAbsent(event.getGuild().getIdLong(), id -> new GuildState());
+            String reason = null;
+            int count = 0;
+            synchronized (guild) {
+                if (guild.evicted) continue;
+                guild.lastActivity = now;
+                if (++guild.messagesSinceSweep >= SWEEP_INTERVAL) {
+                    guild.messagesSinceSweep = 0;
+                    guild.users.values().removeIf(user -> user.latest() < now - window);
+                }
+
+                UserState user = guild.users.computeIfAbsent(event.getAuthor().getIdLong(), id -> new UserState(capacity));
+                if (user.times.length != capacity) user.reset(capacity);
+                user.record(now, hash, mentionCount, linkCount);
+
+                int messages = 0, duplicates = 0, mentionSum = 0, linkSum = 0;
+                for (int i = 0; i < user.times.length; i++) {
+                    if (user.times[i] == 0 || now - user.times[i] > window) continue;
+                    messages++;
+                    if (hash != 0 && user.hashes[i] == hash) duplicates++;
+                    mentionSum += user.mentions[i];
+                    linkSum += user.links[i];
+                }
+
+                if (mentionSum >= config.getSpamMentionThreshold()) {
+                    reason = "mentions"; count = mentionSum;
+                } else if (duplicates >= config.getSpamDuplicateThreshold()) {
+                    reason = "duplicates"; count = duplicates;
+                } else if (linkSum >= config.getSpamLinkThreshold()) {
+                    reason = "links"; count = linkSum;
+                } else if (messages >= config.getSpamMessageThreshold()) {
+                    reason = "messages"; count = messages;
+                }
+
+                if (reason == null || now - user.lastAlert <= window) return null;
+                user.lastAlert = now;
+            }
+            return new DetectionEvent(DetectionEvent.SPAM_DETECTED, event.getGuild(), event.getAuthor(), reason, count, event);
+        }
+    }
+
+    /**
+     * Forgets everything recorded for a guild, for when the bot leaves it.
+     */
+    public void onGuildLeave(long guildId) {
+        GuildState state = guilds.remove(guildId);
+        if (state == null) return;
+        synchronized (state) {
+            state.evicted = true;
+        }
+    }
+
+    /**
+     * Every {@link #SWEEP_INTERVAL} joins and messages, drops guilds that have been quiet for longer
+     * than both windows. Nothing they recorded could still count towards a threshold.
+     */
+    private void sweepGuilds(long now, BotConfig config) {
+        if (eventsSinceGuildSweep.incrementAndGet() < SWEEP_INTERVAL) return;
+        eventsSinceGuildSweep.set(0);
+        long idle = Math.max(config.getRaidJoinWindowSeconds(), config.getSpamWindowSeconds()) * 1000L;
+        for (Map.Entry<Long, GuildState> entry : guilds.entrySet()) {
+            GuildState state = entry.getValue();
+            synchronized (state) {
+                if (now - state.lastActivity > idle && guilds.remove(entry.getKey(), state)) state.evicted = true;
+            }
+        }
+    }
+
+    private static int countLinks(String content) {
+        int count = 0;
+        int index = content.indexOf("http");
+        while (index >= 0) {
+            if (content.startsWith("://", index + 4) || content.startsWith("s://", index + 4)) count++;
+            index = content.indexOf("http", index + 4);
+        }
+        return count;
+    }
+
+    private static class GuildState {
+        long[] joinTimes = new long[0];
+        int joinIndex;
+        long lastRaidAlert;
+        long lastActivity;
+        int messagesSinceSweep;
+        // Set once the state has been removed from the map, under its lock, so late callers look it up again
+        boolean evicted;
+        final Map<Long, UserState> users = new HashMap<>();
+    }
+
+    private static class UserState {
+        long[] times;
+        int[] hashes;
+        int[] mentions;
+        int[] links;
+        int next;
+        long lastAlert;
+
+        UserState(int capacity) {
+            reset(capacity);
+        }
+
+        void reset(int capacity) {
+            times = new long[capacity];
+            hashes = new int[capacity];
+            mentions = new int[capacity];
+            links = new int[capacity];
+            next = 0;
+        }
+
+        void record(long time, int hash, int mentionCount, int linkCount) {
+            times[next] = time;
+            hashes[next] = hash;
+            mentions[next] = mentionCount;
+            links[next] = linkCount;
+            next = (next + 1) % times.length;
+        }
+
+        long latest() {
+            return times[(next + times.length - 1) % times.length];
+        }
+    }
+}
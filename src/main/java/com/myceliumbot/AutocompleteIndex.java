@@ -0,0 +1,206 @@
+package com.myceliumbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named suggestion lists for slash command autocomplete, available to scripts as the global "autocomplete".
+ * Scripts fill the lists, and options that declare {@code "autocomplete": "<index>"} in their metadata
+ * are answered straight from them, without running any script code.
+ *
+ * Every index has a global list and optionally one list per guild. Each list is a set of immutable
+ * sorted arrays that is replaced on every change, so lookups are a lock-free binary search.
+ */
+public class AutocompleteIndex {
+    // Discord's limits for autocomplete choices
+    public static final int MAX_CHOICES = 25;
+    private static final int MAX_CHOICE_LENGTH = 100;
+
+    private final Map<String, PrefixIndex> lists = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a suggestion, or replaces the value of an existing suggestion with the same name.
+     * @param guildId The guild the suggestion is shown in, or null to show it everywhere.
+     * @param value What the option is set to when the suggestion is picked, at most 100 characters.
+     */
+    public void put(String index, String guildId, String name, String value) {
+        checkLength(name);
+        checkLength(value);
+        lists.compute(key(index, guildId), (k, list) -> (list != null ? list : PrefixIndex.EMPTY).with(name, value));
+    }
+
+    /**
+     * Adds a suggestion whose value is its name.
+     */
+    public void put(String index, String guildId, String name) {
+        put(index, guildId, name, name);
+    }
+
+    public void remove(String index, String guildId, String name) {
+        lists.computeIfPresent(key(index, guildId), (k, list) -> list.without(name));
+    }
+
+    /**
+     * Replaces all suggestions of an index in one step, which is much faster than adding them one by one.
+     * @param values The value of each name, or null to use the names as values.
+     */
+    public void replaceAll(String index, String guildId, List<String> names, List<String> values) {
+        if (values != null && values.size() != names.size()) {
+            throw new IllegalArgumentException("names and values must have the same length");
+        }
+        String[] labels = new String[names.size()];
+        String[] targets = new String[names.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = names.get(i);
+            targets[i] = values != null ? values.get(i) : labels[i];
+            checkLength(labels[i]);
+            checkLength(targets[i]);
+        }
+        lists.put(key(index, guildId), PrefixIndex.of(labels, targets));
+    }
+
+    public void replaceAll(String index, String guildId, List<String> names) {
+        replaceAll(index, guildId, names, null);
+    }
+
+    public void clear(String index, String guildId) {
+        lists.remove(key(index, guildId));
+    }
+
+    /**
+     * Returns the names of the suggestions that start with the given text, ignoring case.
+     * Suggestions of the guild come before global ones.
+     */
+    public List<String> search(String index, String guildId, String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        search(index, guildId, prefix, limit, (name, value) -> names.add(name));
+        return names;
+    }
+
+    /**
+     * Passes up to {@code limit} suggestions that start with the given text to the consumer, guild suggestions first.
+     */
+    void search(String index, String guildId, String prefix, int limit, SuggestionConsumer consumer) {
+        String normalized = prefix == null ? "" : prefix.toLowerCase(Locale.ROOT);
+        int found = 0;
+        if (guildId != null) {
+            PrefixIndex guildList = lists.get(key(index, guildId));
+            if (guildList != null) found = guildList.search(normalized, limit, consumer);
+        }
+        PrefixIndex globalList = lists.get(key(index, null));
+        if (globalList != null && found < limit) globalList.search(normalized, limit - found, consumer);
+    }
+
+    private static String key(String index, String guildId) {
+        return index + '\0' + (guildId != null ? guildId : "");
+    }
+
+    private static void checkLength(String text) {
+        if (text == null || text.isEmpty() || text.length() > MAX_CHOICE_LENGTH) {
+            throw new IllegalArgumentException("Autocomplete names and values must be 1 to " + MAX_CHOICE_LENGTH + " characters long");
+        }
+    }
+
+    @FunctionalInterface
+    interface SuggestionConsumer {
+        void accept(String name, String value);
+    }
+
+    /**
+     * An immutable list of suggestions sorted by their lower-cased name.
+     */
+    private static final class PrefixIndex {
+        static final PrefixIndex EMPTY = new PrefixIndex(new String[0], new String[0], new String[0]);
+
+        final String[] keys;
+        final String[] names;
+        final String[] values;
+
+        private PrefixIndex(String[] keys, String[] names, String[] values) {
+            this.keys = keys;
+            this.names = names;
+            this.values = values;
+        }
+
+        static PrefixIndex of(String[] names, String[] values) {
+            Integer[] order = new Integer[names.length];
+            String[] keys = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                order[i] = i;
+                keys[i] = names[i].toLowerCase(Locale.ROOT);
+            }
+            Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+
+            // Later entries win when the same name is given twice
+            List<Integer> kept = new ArrayList<>();
+            for (int i = 0; i < order.length; i++) {
+                if (!kept.isEmpty() && keys[kept.get(kept.size() - 1)].equals(keys[order[i]])) {
+                    kept.set(kept.size() - 1, Math.max(kept.get(kept.size() - 1), order[i]));
+                } else {
+                    kept.add(order[i]);
+                }
+            }
+            String[] sortedKeys = new String[kept.size()];
+            String[] sortedNames = new String[kept.size()];
+            String[] sortedValues = new String[kept.size()];
+            for (int i = 0; i < kept.size(); i++) {
+                sortedKeys[i] = keys[kept.get(i)];
+                sortedNames[i] = names[kept.get(i)];
+                sortedValues[i] = values[kept.get(i)];
+            }
+            return new PrefixIndex(sortedKeys, sortedNames, sortedValues);
+        }
+
+        PrefixIndex with(String name, String value) {
+            String key = name.toLowerCase(Locale.ROOT);
+            int position = Arrays.binarySearch(keys, key);
+            if (position >= 0) {
+                String[] newNames = names.clone();
+                String[] newValues = values.clone();
+                newNames[position] = name;
+                newValues[position] = value;
+                return new PrefixIndex(keys, newNames, newValues);
+            }
+            int insert = -position - 1;
+            return new PrefixIndex(inserted(keys, insert, key), inserted(names, insert, name), inserted(values, insert, value));
+        }
+
+        PrefixIndex without(String name) {
+            int position = Arrays.binarySearch(keys, name.toLowerCase(Locale.ROOT));
+            if (position < 0) return this;
+            return new PrefixIndex(removed(keys, position), removed(names, position), removed(values, position));
+        }
+
+        /**
+         * @return The number of suggestions passed to the consumer.
+         */
+        int search(String prefix, int limit, SuggestionConsumer consumer) {
+            int position = Arrays.binarySearch(keys, prefix);
+            if (position < 0) position = -position - 1;
+            int found = 0;
+            for (int i = position; i < keys.length && found < limit && keys[i].startsWith(prefix); i++, found++) {
+                consumer.accept(names[i], values[i]);
+            }
+            return found;
+        }
+
+        private static String[] inserted(String[] array, int index, String element) {
+            String[] result = new String[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = element;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static String[] removed(String[] array, int index) {
+            String[] result = new String[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+    }
+}
@@ -4,15 +4,28 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * The bot's settings from config.json. Every instance is an immutable snapshot; the current one is
+ * published through a single volatile reference and replaced as a whole when config.json changes.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class BotConfig {
     // Bot appearance
@@ -31,9 +44,18 @@ public class BotConfig {
 
     // Paths and directories
     private String scriptsDirectory = "./scripts";
+    private String pluginsDirectory = "./plugins";
     private String databasePath = "./data/bot.db";
     private String logsDirectory = "./logs";
 
+    // Database maintenance
+    private Map<String, Integer> retentionDays = new LinkedHashMap<>(Map.of("MEMBER_JOIN", 90));
+    private int maintenanceIntervalMinutes = 60;
+    private String backupDirectory = "./data/backups";
+    private int backupIntervalHours = 24;
+    private int backupsToKeep = 7;
+    private int counterFlushIntervalSeconds = 30;
+
     // Debug settings
     private boolean debugMode = false;
     private boolean logCommands = true;
@@ -43,88 +65,127 @@ public class BotConfig {
     private List<String> disabledScripts = new ArrayList<>();
     private boolean enableScriptHotReload = false;
     private boolean enableJsConsoleAccess = false;
+    private boolean enableScriptProfiler = false;
+    private long replyCacheMaxChars = 1_000_000;
+    private int messageHistoryDepth = 50;
+    private long messageHistoryMaxBytes = 32_000_000;
+    private int eventHandlerTimeoutSeconds = 10;
 
     // HTTP settings
     private int httpTimeoutSeconds = 30;
     private boolean allowUnsafeConnections = false;
 
+    // Outbound queue
+    private long outboundBatchWindowMillis = 1000;
+    private int outboundMaxInFlight = 5;
+
+    // Anti-raid and spam detection
+    private boolean antiRaidEnabled = true;
+    private int raidJoinThreshold = 10;
+    private int raidJoinWindowSeconds = 10;
+    private int spamWindowSeconds = 5;
+    private int spamMessageThreshold = 8;
+    private int spamDuplicateThreshold = 4;
+    private int spamMentionThreshold = 10;
+    private int spamLinkThreshold = 5;
+
     // Rate limiting
     private int globalRateLimitPerMinute = 100;
     private boolean enablePerUserRateLimit = true;
     private int perUserRateLimitPerMinute = 10;
 
-    // Getters and setters
+    // Getters; a published configuration is never modified, so there are no setters
     public String getBotName() { return botName; }
-    public void setBotName(String botName) { this.botName = botName; }
 
     public String getActivityType() { return activityType; }
-    public void setActivityType(String activityType) { this.activityType = activityType; }
 
     public String getActivityText() { return activityText; }
-    public void setActivityText(String activityText) { this.activityText = activityText; }
 
     public String getEmbedColor() { return embedColor; }
-    public void setEmbedColor(String embedColor) { this.embedColor = embedColor; }
 
     public String getErrorColor() { return errorColor; }
-    public void setErrorColor(String errorColor) { this.errorColor = errorColor; }
 
     public String getSuccessColor() { return successColor; }
-    public void setSuccessColor(String successColor) { this.successColor = successColor; }
 
     public int getCommandCooldownSeconds() { return commandCooldownSeconds; }
-    public void setCommandCooldownSeconds(int cooldown) { this.commandCooldownSeconds = cooldown; }
 
     public boolean isAllowDMCommands() { return allowDMCommands; }
-    public void setAllowDMCommands(boolean allowDMCommands) { this.allowDMCommands = allowDMCommands; }
 
     public List<Long> getOwnerIds() { return ownerIds; }
-    public void setOwnerIds(List<Long> ownerIds) { this.ownerIds = ownerIds; }
 
     public boolean isMentionRepliesEnabled() { return mentionRepliesEnabled; }
-    public void setMentionRepliesEnabled(boolean mentionRepliesEnabled) { this.mentionRepliesEnabled = mentionRepliesEnabled; }
 
     public String getScriptsDirectory() { return scriptsDirectory; }
-    public void setScriptsDirectory(String scriptsDirectory) { this.scriptsDirectory = scriptsDirectory; }
+
+    public String getPluginsDirectory() { return pluginsDirectory; }
 
     public String getDatabasePath() { return databasePath; }
-    public void setDatabasePath(String databasePath) { this.databasePath = databasePath; }
 
     public String getLogsDirectory() { return logsDirectory; }
-    public void setLogsDirectory(String logsDirectory) { this.logsDirectory = logsDirectory; }
+
+    public Map<String, Integer> getRetentionDays() { return retentionDays; }
+
+    public int getMaintenanceIntervalMinutes() { return maintenanceIntervalMinutes; }
+
+    public String getBackupDirectory() { return backupDirectory; }
+
+    public int getBackupIntervalHours() { return backupIntervalHours; }
+
+    public int getBackupsToKeep() { return backupsToKeep; }
+
+    public int getCounterFlushIntervalSeconds() { return counterFlushIntervalSeconds; }
 
     public boolean isDebugMode() { return debugMode; }
-    public void setDebugMode(boolean debugMode) { this.debugMode = debugMode; }
 
     public boolean isLogCommands() { return logCommands; }
-    public void setLogCommands(boolean logCommands) { this.logCommands = logCommands; }
 
     public String getLogLevel() { return logLevel; }
-    public void setLogLevel(String logLevel) { this.logLevel = logLevel; }
 
     public List<String> getDisabledScripts() { return disabledScripts; }
-    public void setDisabledScripts(List<String> disabledScripts) { this.disabledScripts = disabledScripts; }
 
     public boolean isEnableScriptHotReload() { return enableScriptHotReload; }
-    public void setEnableScriptHotReload(boolean enableScriptHotReload) { this.enableScriptHotReload = enableScriptHotReload; }
 
     public boolean isEnableJsConsoleAccess() { return enableJsConsoleAccess; }
-    public void setEnableJsConsoleAccess(boolean enableJsConsoleAccess) { this.enableJsConsoleAccess = enableJsConsoleAccess; }
+
+    public boolean isEnableScriptProfiler() { return enableScriptProfiler; }
+
+    public long getReplyCacheMaxChars() { return replyCacheMaxChars; }
+
+    public int getMessageHistoryDepth() { return messageHistoryDepth; }
+
+    public long getMessageHistoryMaxBytes() { return messageHistoryMaxBytes; }
+
+    public int getEventHandlerTimeoutSeconds() { return eventHandlerTimeoutSeconds; }
 
     public int getHttpTimeoutSeconds() { return httpTimeoutSeconds; }
-    public void setHttpTimeoutSeconds(int httpTimeoutSeconds) { this.httpTimeoutSeconds = httpTimeoutSeconds; }
 
     public boolean isAllowUnsafeConnections() { return allowUnsafeConnections; }
-    public void setAllowUnsafeConnections(boolean allowUnsafeConnections) { this.allowUnsafeConnections = allowUnsafeConnections; }
+
+    public long getOutboundBatchWindowMillis() { return outboundBatchWindowMillis; }
+
+    public int getOutboundMaxInFlight() { return outboundMaxInFlight; }
+
+    public boolean isAntiRaidEnabled() { return antiRaidEnabled; }
+
+    public int getRaidJoinThreshold() { return raidJoinThreshold; }
+
+    public int getRaidJoinWindowSeconds() { return raidJoinWindowSeconds; }
+
+    public int getSpamWindowSeconds() { return spamWindowSeconds; }
+
+    public int getSpamMessageThreshold() { return spamMessageThreshold; }
+
+    public int getSpamDuplicateThreshold() { return spamDuplicateThreshold; }
+
+    public int getSpamMentionThreshold() { return spamMentionThreshold; }
+
+    public int getSpamLinkThreshold() { return spamLinkThreshold; }
 
     public int getGlobalRateLimitPerMinute() { return globalRateLimitPerMinute; }
-    public void setGlobalRateLimitPerMinute(int globalRateLimitPerMinute) { this.globalRateLimitPerMinute = globalRateLimitPerMinute; }
 
     public boolean isEnablePerUserRateLimit() { return enablePerUserRateLimit; }
-    public void setEnablePerUserRateLimit(boolean enablePerUserRateLimit) { this.enablePerUserRateLimit = enablePerUserRateLimit; }
 
     public int getPerUserRateLimitPerMinute() { return perUserRateLimitPerMinute; }
-    public void setPerUserRateLimitPerMinute(int perUserRateLimitPerMinute) { this.perUserRateLimitPerMinute = perUserRateLimitPerMinute; }
 
     // Utility methods
     @JsonIgnore
@@ -148,16 +209,32 @@ public class BotConfig {
 
     // Static config handling
     private static final File CONFIG_FILE = new File("config.json");
+    // Editors often write a file in several steps, so a reload waits until the writes have settled
+    private static final long RELOAD_DELAY_MILLIS = 250;
     private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
-    private static BotConfig instance;
-
+    private static final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private static volatile BotConfig current;
+    private static Thread watcher;
+
+    /**
+     * Returns the current configuration. This is a single volatile read, so hot paths should call it
+     * for every use instead of keeping a reference, and will see changes to config.json right away.
+     */
     public static BotConfig getInstance() {
-        if (instance == null) {
-            instance = loadConfig();
+        BotConfig config = current;
+        if (config == null) {
+            synchronized (BotConfig.class) {
+                if (current == null) current = loadConfig();
+                config = current;
+            }
         }
-        return instance;
+        return config;
     }
 
+    /**
+     * Reads config.json, creating it with default values if it does not exist.
+     * The result is not published; use {@link #reload()} for that.
+     */
     public static BotConfig loadConfig() {
         try {
             // Ensure parent directory for database exists, as defined in config
@@ -169,7 +246,7 @@ public class BotConfig {
         }
 
         if (!CONFIG_FILE.exists()) {
-            BotConfig defaultConfig = new BotConfig();
+            BotConfig defaultConfig = new BotConfig().frozen();
             try {
                 mapper.writeValue(CONFIG_FILE, defaultConfig);
                 System.out.println("Created default configuration file: config.json");
@@ -180,15 +257,122 @@ public class BotConfig {
         }
 
         try {
-            instance = mapper.readValue(CONFIG_FILE, BotConfig.class);
+            BotConfig config = mapper.readValue(CONFIG_FILE, BotConfig.class).frozen();
             System.out.println("Loaded configuration from config.json");
-            return instance;
+            return config;
         } catch (IOException e) {
             System.err.println("Error loading config, using defaults: " + e.getMessage());
-            return new BotConfig();
+            return new BotConfig().frozen();
         }
     }
 
+    /**
+     * Reads config.json again and publishes it. If the file cannot be read, the current configuration is kept.
+     */
+    public static void reload() {
+        BotConfig config;
+        try {
+            config = mapper.readValue(CONFIG_FILE, BotConfig.class).frozen();
+        } catch (IOException e) {
+            System.err.println("Error reloading config, keeping the current configuration: " + e.getMessage());
+            return;
+        }
+        if (publish(config)) System.out.println("Reloaded configuration from config.json");
+    }
+
+    /**
+     * Returns a copy of the current configuration with some options replaced, and publishes it.
+     * Meant for tools like the load harness that run the bot with different settings.
+     */
+    static BotConfig override(Map<String, Object> options) {
+        try {
+            ObjectNode tree = mapper.valueToTree(getInstance());
+            tree.setAll((ObjectNode) mapper.valueToTree(options));
+            BotConfig config = mapper.treeToValue(tree, BotConfig.class).frozen();
+            publish(config);
+            return config;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid configuration override: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes a configuration the current one and notifies the listeners if any option changed.
+     * @return Whether any option changed.
+     */
+    private static boolean publish(BotConfig config) {
+        BotConfig previous;
+        synchronized (BotConfig.class) {
+            previous = current;
+            current = config;
+        }
+        if (previous == null || mapper.valueToTree(previous).equals(mapper.valueToTree(config))) return false;
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.onConfigChanged(previous, config);
+            } catch (Exception e) {
+                System.err.println("Error applying configuration change: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a listener that is called on the watcher thread whenever a reload changes any option.
+     * Settings that are read through {@link #getInstance()} on every use need no listener.
+     */
+    public static void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts a daemon thread that reloads the configuration whenever config.json changes.
+     */
+    public static synchronized void startWatching() {
+        if (watcher != null) return;
+        Path file = CONFIG_FILE.toPath().toAbsolutePath();
+        watcher = new Thread(() -> watch(file), "ConfigWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static void watch(Path file) {
+        try (WatchService service = file.getFileSystem().newWatchService()) {
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                if (!affectsFile(service.take(), file)) continue;
+                // Swallow the rest of this burst of writes, then reload once
+                Thread.sleep(RELOAD_DELAY_MILLIS);
+                WatchKey pending;
+                while ((pending = service.poll()) != null) affectsFile(pending, file);
+                reload();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not watch config.json for changes: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean affectsFile(WatchKey key, Path file) {
+        boolean affected = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) affected = true;
+        }
+        key.reset();
+        return affected;
+    }
+
+    /**
+     * Replaces the collections with unmodifiable copies, so the configuration can be shared freely once published.
+     */
+    private BotConfig frozen() {
+        ownerIds = ownerIds == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(ownerIds));
+        disabledScripts = disabledScripts == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(disabledScripts));
+        retentionDays = retentionDays == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(retentionDays));
+        return this;
+    }
+
     public void save() {
         try {
             mapper.writeValue(CONFIG_FILE, this);
@@ -197,4 +381,9 @@ public class BotConfig {
             System.err.println("Failed to save configuration: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onConfigChanged(BotConfig previous, BotConfig current);
+    }
+}
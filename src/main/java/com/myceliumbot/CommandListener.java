@@ -1,21 +1,34 @@
 package com.myceliumbot;
 
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 public class CommandListener extends ListenerAdapter {
     private final ScriptManager scriptManager;
-    private final BotConfig config;
+    private final Consumer<CompletableFuture<Void>> dispatched;
 
     public CommandListener(ScriptManager scriptManager) {
+        this(scriptManager, handled -> {});
+    }
+
+    /**
+     * @param dispatched Is given the completion of every command handed to the script handlers.
+     */
+    CommandListener(ScriptManager scriptManager, Consumer<CompletableFuture<Void>> dispatched) {
         this.scriptManager = scriptManager;
-        this.config = BotConfig.getInstance();
+        this.dispatched = dispatched;
     }
 
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        BotConfig config = BotConfig.getInstance();
+
         // Skip DM commands if disabled
         if (!config.isAllowDMCommands() && event.getChannelType() == ChannelType.PRIVATE) {
             event.reply("Commands in DMs are disabled").setEphemeral(true).queue();
@@ -30,8 +43,14 @@ public class CommandListener extends ListenerAdapter {
                     userName, event.getName(), guildName);
         }
 
-        // Handle the command
+        // Handle the command; the handler runs on its script's own thread, not on the gateway thread
         event.deferReply().queue();
-        scriptManager.handleCommand(event);
+        dispatched.accept(scriptManager.handleCommand(event));
+    }
+
+    @Override
+    public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event) {
+        // Answered from memory on the calling thread; Discord only waits a few seconds for suggestions
+        scriptManager.handleAutocomplete(event);
     }
 }
\ No newline at end of file
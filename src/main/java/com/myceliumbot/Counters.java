@@ -0,0 +1,491 @@
+package com.myceliumbot;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * High-frequency counters and last-seen timestamps for scripts, available as the global "counters".
+ * Every counter is identified by a name, a guild and a user, like ("messages", guild, user).
+ *
+ * Updates only touch memory: they go into one of several striped hash tables keyed by primitive
+ * ids, so concurrent handlers rarely contend and no objects are allocated per update. The pending
+ * changes are written to the counters table in a single transaction of batched upserts on an
+ * interval and when the bot shuts down.
+ *
+ * Reads combine the stored row with the pending changes, including those being written by a flush.
+ * They do not block a flush; a read that overlaps the commit of one is simply repeated.
+ */
+public class Counters {
+    private static final int STRIPES = 16;
+    private static final String SELECT = "SELECT value, last_seen FROM counters WHERE name = ? AND guild_id = ? AND user_id = ?";
+    private static final String UPSERT = "INSERT INTO counters (name, guild_id, user_id, value, last_seen) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (name, guild_id, user_id) DO UPDATE SET value = value + excluded.value, " +
+            "last_seen = coalesce(max(last_seen, excluded.last_seen), last_seen, excluded.last_seen)";
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Counters");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final DatabaseManager dbManager;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    // Held exclusively from a flush's commit until its tables are released, so reads can tell whether they overlapped it
+    private final StampedLock commitLock = new StampedLock();
+    private ScheduledFuture<?> flushTask;
+
+    // Connections kept open between uses: the read one is guarded by readMonitor, the write one is only used by flush
+    private final Object readMonitor = new Object();
+    private Connection readConnection;
+    private PreparedStatement readStatement;
+    private Connection writeConnection;
+
+    public Counters(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Starts the periodic flush and registers the final flush on shutdown.
+     */
+    public void start() {
+        scheduleFlush(BotConfig.getInstance().getCounterFlushIntervalSeconds());
+        BotConfig.addListener((previous, current) -> {
+            if (current.getCounterFlushIntervalSeconds() != previous.getCounterFlushIntervalSeconds()) {
+                scheduleFlush(current.getCounterFlushIntervalSeconds());
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Counters-shutdown"));
+    }
+
+    private synchronized void scheduleFlush(long interval) {
+        if (flushTask != null) flushTask.cancel(false);
+        long seconds = Math.max(1, interval);
+        flushTask = executor.scheduleWithFixedDelay(this::flush, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds one to a counter.
+     * @param userId The user, or null for a guild-wide counter.
+     */
+    public void increment(String name, String guildId, String userId) {
+        add(name, guildId, userId, 1);
+    }
+
+    /**
+     * Adds an amount, which may be negative, to a counter.
+     * @param userId The user, or null for a guild-wide counter.
+     */
+    public void add(String name, String guildId, String userId, long amount) {
+        update(nameId(name), snowflake(guildId), snowflake(userId), amount, 0);
+    }
+
+    /**
+     * Sets a counter's last-seen time to now, without changing its value.
+     * @param userId The user, or null for a guild-wide counter.
+     */
+    public void touch(String name, String guildId, String userId) {
+        update(nameId(name), snowflake(guildId), snowflake(userId), 0, System.currentTimeMillis());
+    }
+
+    /**
+     * @return The current value of a counter, including changes that are not written yet.
+     */
+    public long get(String name, String guildId, String userId) {
+        return read(name, guildId, userId, false);
+    }
+
+    /**
+     * @return The last time a counter was touched, in epoch milliseconds, or 0 if it never was.
+     */
+    public long lastSeen(String name, String guildId, String userId) {
+        return read(name, guildId, userId, true);
+    }
+
+    /**
+     * Returns the users with the highest values of a counter in a guild as a JSON array of
+     * objects with "user_id", "value" and "last_seen". Pending changes are included.
+     * @param limit The number of users to return, at most 100.
+     */
+    public String top(String name, String guildId, int limit) {
+        int nameId = nameId(name);
+        long guild = snowflake(guildId);
+        int count = Math.max(1, Math.min(limit, 100));
+        while (true) {
+            long stamp = stableStamp();
+            Map<Long, long[]> pending = new HashMap<>();
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.live.collect(nameId, guild, pending);
+                    if (stripe.flushing != null) stripe.flushing.collect(nameId, guild, pending);
+                }
+            }
+
+            // Users without pending changes keep their stored order, so the stored top 'count + pending' rows
+            // contain the best of them no matter how many of the pending users are among those rows
+            Map<Long, long[]> rows = storedTop(name, guild, count + pending.size());
+            if (rows.size() == count + pending.size()) {
+                for (Long user : pending.keySet()) {
+                    if (!rows.containsKey(user)) rows.put(user, readStored(name, guild, user));
+                }
+            }
+            if (!commitLock.validate(stamp)) continue;
+
+            pending.forEach((user, change) -> rows.merge(user, change,
+                    (stored, delta) -> new long[]{stored[0] + delta[0], Math.max(stored[1], delta[1])}));
+            ObjectMapper mapper = new ObjectMapper();
+            ArrayNode result = mapper.createArrayNode();
+            rows.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                    .limit(count)
+                    .forEach(entry -> {
+                        ObjectNode row = result.addObject();
+                        row.put("user_id", String.valueOf(entry.getKey()));
+                        row.put("value", String.valueOf(entry.getValue()[0]));
+                        row.put("last_seen", entry.getValue()[1] != 0 ? String.valueOf(entry.getValue()[1]) : null);
+                    });
+            return result.toString();
+        }
+    }
+
+    private void update(int name, long guild, long user, long amount, long lastSeen) {
+        Stripe stripe = stripes[stripeIndex(name, guild, user)];
+        synchronized (stripe) {
+            stripe.live.add(name, guild, user, amount, lastSeen);
+        }
+    }
+
+    private long read(String name, String guildId, String userId, boolean lastSeen) {
+        int nameId = nameId(name);
+        long guild = snowflake(guildId);
+        long user = snowflake(userId);
+        Stripe stripe = stripes[stripeIndex(nameId, guild, user)];
+        while (true) {
+            long stamp = stableStamp();
+            long[] stored = readStored(name, guild, user);
+            long value = stored[0];
+            long seen = stored[1];
+            synchronized (stripe) {
+                for (Table table : new Table[]{stripe.live, stripe.flushing}) {
+                    int slot = table != null ? table.find(nameId, guild, user) : -1;
+                    if (slot < 0) continue;
+                    value += table.values[slot];
+                    seen = Math.max(seen, table.lastSeen[slot]);
+                }
+            }
+            if (commitLock.validate(stamp)) return lastSeen ? seen : value;
+        }
+    }
+
+    /**
+     * Waits for a commit that is under way to finish.
+     * @return A stamp that stays valid until the next commit starts.
+     */
+    private long stableStamp() {
+        long stamp = commitLock.tryOptimisticRead();
+        while (stamp == 0) {
+            commitLock.unlockRead(commitLock.readLock());
+            stamp = commitLock.tryOptimisticRead();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return The stored value and last-seen time of a counter, zero for each if it has no row.
+     */
+    private long[] readStored(String name, long guild, long user) {
+        synchronized (readMonitor) {
+            try {
+                if (readStatement == null) readStatement = readConnection().prepareStatement(SELECT);
+                readStatement.setString(1, name);
+                readStatement.setString(2, String.valueOf(guild));
+                readStatement.setString(3, String.valueOf(user));
+                try (ResultSet rs = readStatement.executeQuery()) {
+                    return rs.next() ? new long[]{rs.getLong(1), rs.getLong(2)} : new long[2];
+                }
+            } catch (SQLException e) {
+                System.err.println("Counters read error: " + e.getMessage());
+                closeReadConnection();
+                return new long[2];
+            }
+        }
+    }
+
+    /**
+     * @return The stored rows with the highest values, by user, in descending order of value.
+     */
+    private Map<Long, long[]> storedTop(String name, long guild, int limit) {
+        Map<Long, long[]> rows = new LinkedHashMap<>();
+        synchronized (readMonitor) {
+            try (PreparedStatement pstmt = readConnection().prepareStatement(
+                    "SELECT user_id, value, last_seen FROM counters WHERE name = ? AND guild_id = ? AND user_id != '0' " +
+                    "ORDER BY value DESC LIMIT ?")) {
+                pstmt.setString(1, name);
+                pstmt.setString(2, String.valueOf(guild));
+                pstmt.setInt(3, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) rows.put(Long.parseLong(rs.getString(1)), new long[]{rs.getLong(2), rs.getLong(3)});
+                }
+            } catch (SQLException e) {
+                System.err.println("Counters read error: " + e.getMessage());
+                closeReadConnection();
+            }
+        }
+        return rows;
+    }
+
+    private Connection readConnection() throws SQLException {
+        if (readConnection == null) readConnection = dbManager.getConnection();
+        return readConnection;
+    }
+
+    private void closeReadConnection() {
+        try {
+            if (readConnection != null) readConnection.close();
+        } catch (SQLException ignored) {
+        }
+        readConnection = null;
+        readStatement = null;
+    }
+
+    /**
+     * Writes all pending changes to the database. If the write fails, the changes are kept for the next flush.
+     */
+    public synchronized void flush() {
+        try {
+            // Swap out the pending tables so updates carry on into empty ones while these are written
+            Table[] flushing = new Table[STRIPES];
+            int pending = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                synchronized (stripes[i]) {
+                    if (stripes[i].live.size == 0) continue;
+                    flushing[i] = stripes[i].live;
+                    stripes[i].flushing = flushing[i];
+                    stripes[i].live = stripes[i].spare;
+                    stripes[i].spare = null;
+                    pending += flushing[i].size;
+                }
+            }
+            if (pending == 0) return;
+
+            boolean written = false;
+            long stamp = 0;
+            try {
+                write(flushing);
+                stamp = commitLock.writeLock();
+                writeConnection.commit();
+                written = true;
+            } catch (SQLException | RuntimeException e) {
+                // Drop the connection along with its half-written transaction
+                System.err.println("Counters flush error: " + e.getMessage());
+                closeWriteConnection();
+            } finally {
+                if (stamp == 0) stamp = commitLock.writeLock();
+                try {
+                    for (int i = 0; i < STRIPES; i++) {
+                        if (flushing[i] == null) continue;
+                        synchronized (stripes[i]) {
+                            if (!written) flushing[i].copyTo(stripes[i].live);
+                            flushing[i].clear();
+                            stripes[i].spare = flushing[i];
+                            stripes[i].flushing = null;
+                        }
+                    }
+                } finally {
+                    commitLock.unlockWrite(stamp);
+                }
+            }
+        } catch (Exception e) {
+            // Never let an exception cancel the periodic flush
+            System.err.println("Error flushing counters: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the upserts for all pending changes to the open write transaction, without committing it.
+     */
+    private void write(Table[] tables) throws SQLException {
+        if (writeConnection == null) {
+            writeConnection = dbManager.getConnection();
+            writeConnection.setAutoCommit(false);
+        }
+        try (PreparedStatement pstmt = writeConnection.prepareStatement(UPSERT)) {
+            for (Table table : tables) {
+                if (table == null) continue;
+                for (int slot = 0; slot < table.names.length; slot++) {
+                    if (table.names[slot] == 0) continue;
+                    pstmt.setString(1, nameOf(table.names[slot]));
+                    pstmt.setString(2, String.valueOf(table.guilds[slot]));
+                    pstmt.setString(3, String.valueOf(table.users[slot]));
+                    pstmt.setLong(4, table.values[slot]);
+                    if (table.lastSeen[slot] != 0) {
+                        pstmt.setLong(5, table.lastSeen[slot]);
+                    } else {
+                        pstmt.setNull(5, Types.INTEGER);
+                    }
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void closeWriteConnection() {
+        try {
+            if (writeConnection != null) {
+                writeConnection.rollback();
+                writeConnection.close();
+            }
+        } catch (SQLException ignored) {
+        }
+        writeConnection = null;
+    }
+
+    /**
+     * @return A small id for a counter name, starting at 1 so that 0 can mark empty slots.
+     */
+    private int nameId(String name) {
+        if (name == null) throw new IllegalArgumentException("Counter name must not be null");
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        synchronized (names) {
+            return nameIds.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size();
+            });
+        }
+    }
+
+    private String nameOf(int id) {
+        synchronized (names) {
+            return names.get(id - 1);
+        }
+    }
+
+    private static long snowflake(String id) {
+        return id == null || id.isEmpty() ? 0 : Long.parseLong(id);
+    }
+
+    private static long hash(int name, long guild, long user) {
+        long h = guild * 0x9E3779B97F4A7C15L ^ user * 0xC2B2AE3D27D4EB4FL ^ name * 0x165667B19E3779F9L;
+        return h ^ (h >>> 31);
+    }
+
+    private static int stripeIndex(int name, long guild, long user) {
+        return (int) (hash(name, guild, user) >>> 60) & (STRIPES - 1);
+    }
+
+    private static class Stripe {
+        Table live = new Table();
+        // The table a flush is writing right now, if any; reads still count its changes
+        Table flushing;
+        // The table written by the last flush, reused so steady-state updates allocate nothing
+        Table spare = new Table();
+    }
+
+    /**
+     * An open-addressing hash table of pending changes, with one array per field.
+     */
+    private static class Table {
+        int[] names;
+        long[] guilds;
+        long[] users;
+        long[] values;
+        long[] lastSeen;
+        int size;
+
+        Table() {
+            this(64);
+        }
+
+        Table(int capacity) {
+            names = new int[capacity];
+            guilds = new long[capacity];
+            users = new long[capacity];
+            values = new long[capacity];
+            lastSeen = new long[capacity];
+        }
+
+        int find(int name, long guild, long user) {
+            int mask = names.length - 1;
+            for (int slot = (int) hash(name, guild, user) & mask; names[slot] != 0; slot = (slot + 1) & mask) {
+                if (names[slot] == name && guilds[slot] == guild && users[slot] == user) return slot;
+            }
+            return -1;
+        }
+
+        void add(int name, long guild, long user, long amount, long seen) {
+            if ((size + 1) * 4 > names.length * 3) grow();
+            int mask = names.length - 1;
+            int slot = (int) hash(name, guild, user) & mask;
+            while (names[slot] != 0 && (names[slot] != name || guilds[slot] != guild || users[slot] != user)) {
+                slot = (slot + 1) & mask;
+            }
+            if (names[slot] == 0) {
+                names[slot] = name;
+                guilds[slot] = guild;
+                users[slot] = user;
+                size++;
+            }
+            values[slot] += amount;
+            lastSeen[slot] = Math.max(lastSeen[slot], seen);
+        }
+
+        /**
+         * Adds this table's changes for one counter in one guild to the given map of user to {value, last seen}.
+         */
+        void collect(int name, long guild, Map<Long, long[]> out) {
+            for (int slot = 0; slot < names.length; slot++) {
+                if (names[slot] != name || guilds[slot] != guild || users[slot] == 0) continue;
+                long[] change = out.computeIfAbsent(users[slot], u -> new long[2]);
+                change[0] += values[slot];
+                change[1] = Math.max(change[1], lastSeen[slot]);
+            }
+        }
+
+        void copyTo(Table target) {
+            for (int slot = 0; slot < names.length; slot++) {
+                if (names[slot] != 0) target.add(names[slot], guilds[slot], users[slot], values[slot], lastSeen[slot]);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(names, 0);
+            Arrays.fill(values, 0);
+            Arrays.fill(lastSeen, 0);
+            size = 0;
+        }
+
+        private void grow() {
+            Table bigger = new Table(names.length * 2);
+            copyTo(bigger);
+            names = bigger.names;
+            guilds = bigger.guilds;
+            users = bigger.users;
+            values = bigger.values;
+            lastSeen = bigger.lastSeen;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.myceliumbot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the bot database small and backed up while the bot is running.
+ * Periodically deletes old mod_logs rows according to the per-action retention settings,
+ * returns the freed pages to the file system, refreshes the query planner statistics,
+ * and writes online backups with VACUUM INTO.
+ *
+ * All work happens in small batches on a single background thread, so the write lock
+ * is only ever held briefly and live writers are not blocked.
+ */
+public class DatabaseMaintenance {
+    // Rows deleted per transaction, and the pause between transactions to let other writers in
+    private static final int DELETE_BATCH_SIZE = 500;
+    private static final int VACUUM_BATCH_PAGES = 1000;
+    // Upper bound on incremental vacuum steps per run; whatever is left is reclaimed next time
+    private static final int MAX_VACUUM_BATCHES = 100;
+    // PRAGMA auto_vacuum value for INCREMENTAL, the only mode in which incremental_vacuum frees anything
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long BATCH_PAUSE_MILLIS = 50;
+    private static final DateTimeFormatter BACKUP_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "DatabaseMaintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final DatabaseManager dbManager;
+    private ScheduledFuture<?> maintenanceTask;
+    private ScheduledFuture<?> backupTask;
+
+    public DatabaseMaintenance(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Schedules the periodic maintenance and backups according to the configuration,
+     * and schedules them again whenever their intervals change.
+     */
+    public void start() {
+        schedule(BotConfig.getInstance());
+        BotConfig.addListener((previous, current) -> {
+            if (current.getMaintenanceIntervalMinutes() != previous.getMaintenanceIntervalMinutes()
+                    || current.getBackupIntervalHours() != previous.getBackupIntervalHours()) {
+                schedule(current);
+            }
+        });
+    }
+
+    private synchronized void schedule(BotConfig config) {
+        if (maintenanceTask != null) maintenanceTask.cancel(false);
+        if (backupTask != null) backupTask.cancel(false);
+        maintenanceTask = null;
+        backupTask = null;
+
+        long maintenanceMinutes = config.getMaintenanceIntervalMinutes();
+        if (maintenanceMinutes > 0) {
+            maintenanceTask = executor.scheduleWithFixedDelay(this::runMaintenance, maintenanceMinutes, maintenanceMinutes, TimeUnit.MINUTES);
+        }
+        long backupHours = config.getBackupIntervalHours();
+        if (backupHours > 0) {
+            backupTask = executor.scheduleWithFixedDelay(this::runBackup, backupHours, backupHours, TimeUnit.HOURS);
+        }
+    }
+
+    /**
+     * Applies the retention settings, reclaims free pages and updates the planner statistics.
+     */
+    public void runMaintenance() {
+        try (Connection conn = dbManager.getConnection()) {
+            for (Map.Entry<String, Integer> retention : BotConfig.getInstance().getRetentionDays().entrySet()) {
+                if (retention.getValue() == null || retention.getValue() <= 0) continue;
+                int deleted = deleteExpired(conn, retention.getKey(), retention.getValue());
+                if (deleted > 0) {
+                    System.out.printf("Pruned %d '%s' mod_logs row(s) older than %d day(s).%n", deleted, retention.getKey(), retention.getValue());
+                }
+            }
+            reclaimFreePages(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA optimize");
+            }
+        } catch (SQLException | InterruptedException e) {
+            System.err.println("Database maintenance error: " + e.getMessage());
+        }
+    }
+
+    private int deleteExpired(Connection conn, String action, int days) throws SQLException, InterruptedException {
+        String sql = "DELETE FROM mod_logs WHERE id IN (" +
+                "SELECT id FROM mod_logs WHERE action = ? AND timestamp < datetime('now', ?) LIMIT ?)";
+        int total = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, action);
+            pstmt.setString(2, "-" + days + " days");
+            pstmt.setInt(3, DELETE_BATCH_SIZE);
+            int deleted;
+            do {
+                deleted = pstmt.executeUpdate();
+                total += deleted;
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+            } while (deleted == DELETE_BATCH_SIZE);
+        }
+        return total;
+    }
+
+    private void reclaimFreePages(Connection conn) throws SQLException, InterruptedException {
+        try (Statement stmt = conn.createStatement()) {
+            if (queryInt(stmt, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) return;
+            int free = queryInt(stmt, "PRAGMA freelist_count");
+            for (int batch = 0; free > 0 && batch < MAX_VACUUM_BATCHES; batch++) {
+                // The pragma frees one page per step; executeUpdate runs it to completion, execute would stop after the first
+                stmt.executeUpdate("PRAGMA incremental_vacuum(" + VACUUM_BATCH_PAGES + ")");
+                int remaining = queryInt(stmt, "PRAGMA freelist_count");
+                // Another connection may be holding pages, or be freeing them as fast as they are reclaimed
+                if (remaining >= free) break;
+                free = remaining;
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+            }
+        }
+    }
+
+    private int queryInt(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Writes a consistent copy of the database to the backup directory and removes the oldest
+     * backups beyond the configured count. Only takes a read transaction, so writers keep going.
+     */
+    public void runBackup() {
+        BotConfig config = BotConfig.getInstance();
+        File backupDir = new File(config.getBackupDirectory());
+        try {
+            Files.createDirectories(backupDir.toPath());
+        } catch (IOException e) {
+            System.err.println("Could not create backup directory: " + e.getMessage());
+            return;
+        }
+
+        File backupFile = new File(backupDir, "bot-" + LocalDateTime.now().format(BACKUP_NAME_FORMAT) + ".db");
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("VACUUM INTO ?")) {
+            pstmt.setString(1, backupFile.getPath());
+            pstmt.execute();
+            System.out.println("Database backed up to " + backupFile.getPath());
+        } catch (SQLException e) {
+            System.err.println("Database backup error: " + e.getMessage());
+            return;
+        }
+
+        File[] backups = backupDir.listFiles((dir, name) -> name.startsWith("bot-") && name.endsWith(".db"));
+        if (backups == null || backups.length <= config.getBackupsToKeep()) return;
+        Arrays.sort(backups, Comparator.comparing(File::getName));
+        for (int i = 0; i < backups.length - config.getBackupsToKeep(); i++) {
+            if (!backups[i].delete()) {
+                System.err.println("Could not delete old backup: " + backups[i].getPath());
+            }
+        }
+    }
+}
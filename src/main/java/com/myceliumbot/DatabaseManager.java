@@ -8,13 +8,96 @@ import java.io.File;
 import java.sql.*;
 
 public class DatabaseManager {
+    /**
+     * Schema migrations, applied in order on startup. The number of applied migrations is
+     * stored in SQLite's user_version, so each one runs exactly once per database.
+     * Never edit or reorder an existing migration; always append a new one.
+     */
+    private static final String[][] MIGRATIONS = {
+            // 1: Indexes for the lookups scripts do, and per-user and per-guild case summaries
+            {
+                    "CREATE INDEX IF NOT EXISTS idx_mod_logs_guild_target ON mod_logs (guild_id, target_id, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_mod_logs_guild_action ON mod_logs (guild_id, action, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_mod_logs_action_time ON mod_logs (action, timestamp)",
+                    "CREATE INDEX IF NOT EXISTS idx_mod_logs_target_time ON mod_logs (target_id, timestamp)",
+                    "CREATE TABLE IF NOT EXISTS mod_log_summary (" +
+                            "guild_id TEXT NOT NULL, target_id TEXT NOT NULL, action TEXT NOT NULL, count INTEGER NOT NULL," +
+                            "PRIMARY KEY (guild_id, target_id, action)) WITHOUT ROWID",
+                    "CREATE TABLE IF NOT EXISTS mod_log_guild_summary (" +
+                            "guild_id TEXT NOT NULL, action TEXT NOT NULL, count INTEGER NOT NULL," +
+                            "PRIMARY KEY (guild_id, action)) WITHOUT ROWID",
+                    "INSERT INTO mod_log_summary (guild_id, target_id, action, count) " +
+                            "SELECT guild_id, target_id, action, COUNT(*) FROM mod_logs GROUP BY guild_id, target_id, action",
+                    "INSERT INTO mod_log_guild_summary (guild_id, action, count) " +
+                            "SELECT guild_id, action, COUNT(*) FROM mod_logs GROUP BY guild_id, action",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_summary_insert AFTER INSERT ON mod_logs BEGIN " +
+                            "INSERT INTO mod_log_summary (guild_id, target_id, action, count) VALUES (NEW.guild_id, NEW.target_id, NEW.action, 1) " +
+                            "ON CONFLICT (guild_id, target_id, action) DO UPDATE SET count = count + 1; " +
+                            "INSERT INTO mod_log_guild_summary (guild_id, action, count) VALUES (NEW.guild_id, NEW.action, 1) " +
+                            "ON CONFLICT (guild_id, action) DO UPDATE SET count = count + 1; " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_summary_delete AFTER DELETE ON mod_logs BEGIN " +
+                            "UPDATE mod_log_summary SET count = count - 1 WHERE guild_id = OLD.guild_id AND target_id = OLD.target_id AND action = OLD.action; " +
+                            "DELETE FROM mod_log_summary WHERE guild_id = OLD.guild_id AND target_id = OLD.target_id AND action = OLD.action AND count <= 0; " +
+                            "UPDATE mod_log_guild_summary SET count = count - 1 WHERE guild_id = OLD.guild_id AND action = OLD.action; " +
+                            "DELETE FROM mod_log_guild_summary WHERE guild_id = OLD.guild_id AND action = OLD.action AND count <= 0; " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_summary_update AFTER UPDATE OF guild_id, target_id, action ON mod_logs BEGIN " +
+                            "UPDATE mod_log_summary SET count = count - 1 WHERE guild_id = OLD.guild_id AND target_id = OLD.target_id AND action = OLD.action; " +
+                            "DELETE FROM mod_log_summary WHERE guild_id = OLD.guild_id AND target_id = OLD.target_id AND action = OLD.action AND count <= 0; " +
+                            "UPDATE mod_log_guild_summary SET count = count - 1 WHERE guild_id = OLD.guild_id AND action = OLD.action; " +
+                            "DELETE FROM mod_log_guild_summary WHERE guild_id = OLD.guild_id AND action = OLD.action AND count <= 0; " +
+                            "INSERT INTO mod_log_summary (guild_id, target_id, action, count) VALUES (NEW.guild_id, NEW.target_id, NEW.action, 1) " +
+                            "ON CONFLICT (guild_id, target_id, action) DO UPDATE SET count = count + 1; " +
+                            "INSERT INTO mod_log_guild_summary (guild_id, action, count) VALUES (NEW.guild_id, NEW.action, 1) " +
+                            "ON CONFLICT (guild_id, action) DO UPDATE SET count = count + 1; " +
+                            "END"
+            },
+            // 2: Full-text index over case reasons, kept in sync with mod_logs by triggers
+            {
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS mod_logs_fts USING fts5(" +
+                            "reason, content = 'mod_logs', content_rowid = 'id', tokenize = 'unicode61 remove_diacritics 2')",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_fts_insert AFTER INSERT ON mod_logs BEGIN " +
+                            "INSERT INTO mod_logs_fts (rowid, reason) VALUES (NEW.id, NEW.reason); " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_fts_delete AFTER DELETE ON mod_logs BEGIN " +
+                            "INSERT INTO mod_logs_fts (mod_logs_fts, rowid, reason) VALUES ('delete', OLD.id, OLD.reason); " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS mod_logs_fts_update AFTER UPDATE OF reason ON mod_logs BEGIN " +
+                            "INSERT INTO mod_logs_fts (mod_logs_fts, rowid, reason) VALUES ('delete', OLD.id, OLD.reason); " +
+                            "INSERT INTO mod_logs_fts (rowid, reason) VALUES (NEW.id, NEW.reason); " +
+                            "END",
+                    "INSERT INTO mod_logs_fts (mod_logs_fts) VALUES ('rebuild')"
+            },
+            // 3: Counters aggregated in memory by the Counters service; last_seen is in epoch milliseconds
+            {
+                    "CREATE TABLE IF NOT EXISTS counters (" +
+                            "name TEXT NOT NULL, guild_id TEXT NOT NULL, user_id TEXT NOT NULL, " +
+                            "value INTEGER NOT NULL DEFAULT 0, last_seen INTEGER," +
+                            "PRIMARY KEY (name, guild_id, user_id)) WITHOUT ROWID",
+                    "CREATE INDEX IF NOT EXISTS idx_counters_ranking ON counters (name, guild_id, value DESC)"
+            }
+    };
+
+    // How long a statement waits for the write lock
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
     private String dbPath;
     private String dbUrl; // Add this field
+    private final ScriptProfiler profiler = ScriptProfiler.getInstance();
 
     // Default constructor - uses config
     public DatabaseManager() {
-        this.dbPath = BotConfig.getInstance().getDatabasePath();
-        this.dbUrl = "jdbc:sqlite:" + dbPath; // Initialize dbUrl
+        this(BotConfig.getInstance().getDatabasePath());
+    }
+
+    /**
+     * Opens the database at the given path, creating and migrating it if needed.
+     */
+    DatabaseManager(String dbPath) {
+        this.dbPath = dbPath;
+        // Wait for the write lock instead of failing while background maintenance holds it
+        this.dbUrl = "jdbc:sqlite:" + dbPath + "?busy_timeout=" + BUSY_TIMEOUT_MILLIS;
 
         try (Connection conn = DriverManager.getConnection(dbUrl)) {
             initializeDatabase(conn); // Call initializeDatabase
@@ -24,6 +107,22 @@ public class DatabaseManager {
     }
 
     private void initializeDatabase(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // WAL lets backups and other readers run alongside writers
+            stmt.execute("PRAGMA journal_mode = WAL");
+            // Incremental auto-vacuum lets maintenance return free pages without a full VACUUM.
+            // Switching an existing database over needs one full VACUUM, done here before the bot is online.
+            int autoVacuum;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                autoVacuum = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (autoVacuum != 2) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+                System.out.println("Enabled incremental auto-vacuum.");
+            }
+        }
+
         String sql = "CREATE TABLE IF NOT EXISTS mod_logs (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "guild_id TEXT NOT NULL," +
@@ -37,25 +136,81 @@ public class DatabaseManager {
             stmt.execute(sql);
             System.out.println("Initialized 'mod_logs' table.");
         }
+        applyMigrations(conn);
+    }
+
+    private void applyMigrations(Connection conn) throws SQLException {
+        int version;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            version = rs.next() ? rs.getInt(1) : 0;
+        }
+
+        for (int i = version; i < MIGRATIONS.length; i++) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : MIGRATIONS[i]) {
+                    stmt.execute(sql);
+                }
+                stmt.execute("PRAGMA user_version = " + (i + 1));
+                conn.commit();
+                System.out.println("Applied database migration " + (i + 1) + ".");
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Opens a new connection to the bot database. Callers are responsible for closing it.
+     */
+    Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(dbUrl);
+    }
+
+    /**
+     * Ends the statement when the handler that runs it times out. SQLite applies the query timeout only
+     * while waiting for the lock, so the statement is also cancelled if it is still running by then.
+     * @return Must be closed once the statement has finished.
+     */
+    static HostCallDeadline.Registration limitToHandlerDeadline(PreparedStatement pstmt) throws SQLException {
+        long remaining = HostCallDeadline.remainingMillis(BUSY_TIMEOUT_MILLIS);
+        if (remaining < BUSY_TIMEOUT_MILLIS) pstmt.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+        return HostCallDeadline.abortWith(() -> {
+            try {
+                pstmt.cancel();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
     }
 
     public void execute(String sql, Object... params) {
+        long profile = profiler.enterHostCall();
         try (Connection conn = DriverManager.getConnection(dbUrl);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             HostCallDeadline.Registration deadline = limitToHandlerDeadline(pstmt)) {
             for (int i = 0; i < params.length; i++) {
                 pstmt.setObject(i + 1, params[i]);
             }
             pstmt.executeUpdate();
         } catch (SQLException e) {
             System.err.println("DB execute error: " + e.getMessage());
+        } finally {
+            profiler.exitHostCall("db.execute", profile);
         }
     }
 
     public String query(String sql, Object... params) {
         ObjectMapper mapper = new ObjectMapper();
         ArrayNode results = mapper.createArrayNode();
+        long profile = profiler.enterHostCall();
         try (Connection conn = DriverManager.getConnection(dbUrl);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             HostCallDeadline.Registration deadline = limitToHandlerDeadline(pstmt)) {
             for (int i = 0; i < params.length; i++) {
                 pstmt.setObject(i + 1, params[i]);
             }
@@ -73,6 +228,8 @@ public class DatabaseManager {
         } catch (SQLException e) {
             System.err.println("DB query error: " + e.getMessage());
             return "[]"; // Return empty JSON array on error
+        } finally {
+            profiler.exitHostCall("db.query", profile);
         }
         return results.toString();
     }
@@ -0,0 +1,59 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.Event;
+import net.dv8tion.jda.api.events.GenericEvent;
+
+/**
+ * A synthetic event emitted by the {@link AbuseDetector} and passed to scripts
+ * that handle "RAID_DETECTED" or "SPAM_DETECTED".
+ */
+public class DetectionEvent extends Event {
+    public static final String RAID_DETECTED = "RAID_DETECTED";
+    public static final String SPAM_DETECTED = "SPAM_DETECTED";
+
+    private final String type;
+    private final Guild guild;
+    private final User user;
+    private final String reason;
+    private final int count;
+    private final GenericEvent triggerEvent;
+
+    public DetectionEvent(String type, Guild guild, User user, String reason, int count, GenericEvent triggerEvent) {
+        super(triggerEvent.getJDA(), triggerEvent.getResponseNumber());
+        this.type = type;
+        this.guild = guild;
+        this.user = user;
+        this.reason = reason;
+        this.count = count;
+        this.triggerEvent = triggerEvent;
+    }
+
+    /**
+     * @return Either {@link #RAID_DETECTED} or {@link #SPAM_DETECTED}.
+     */
+    public String getType() { return type; }
+
+    public Guild getGuild() { return guild; }
+
+    /**
+     * @return The spamming user, or the user whose join triggered a raid alert.
+     */
+    public User getUser() { return user; }
+
+    /**
+     * @return What tripped the detector: "joins", "messages", "duplicates", "mentions" or "links".
+     */
+    public String getReason() { return reason; }
+
+    /**
+     * @return The value that crossed the threshold within the detection window.
+     */
+    public int getCount() { return count; }
+
+    /**
+     * @return The join or message event that tripped the detector.
+     */
+    public GenericEvent getTriggerEvent() { return triggerEvent; }
+}
@@ -1,28 +1,51 @@
 package com.myceliumbot;
 
 import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 public class EventManager extends ListenerAdapter {
     private final ScriptManager scriptManager;
+    private final AbuseDetector abuseDetector;
+    private final MessageHistory messageHistory;
+    private final Consumer<CompletableFuture<Void>> dispatched;
+
+    public EventManager(ScriptManager scriptManager, MessageHistory messageHistory) {
+        this(scriptManager, messageHistory, handled -> {});
+    }
 
-    public EventManager(ScriptManager scriptManager) {
+    /**
+     * @param dispatched Is given the completion of every event handed to the script handlers.
+     */
+    EventManager(ScriptManager scriptManager, MessageHistory messageHistory, Consumer<CompletableFuture<Void>> dispatched) {
         this.scriptManager = scriptManager;
+        this.abuseDetector = new AbuseDetector();
+        this.messageHistory = messageHistory;
+        this.dispatched = dispatched;
     }
 
     private void handleGenericEvent(String eventType, GenericEvent event) {
         if (scriptManager.hasEventHandler(eventType)) {
-            // Execute in a new thread to avoid blocking the gateway
-            new Thread(() -> scriptManager.executeEventHandler(eventType, event)).start();
+            // Handlers run on their scripts' own threads; handing them over here on the gateway thread keeps the event order
+            dispatched.accept(scriptManager.dispatchEvent(eventType, event));
         }
     }
 
     @Override
     public void onGuildMemberJoin(@NotNull GuildMemberJoinEvent event) {
+        DetectionEvent raid = abuseDetector.onMemberJoin(event);
+        if (raid != null) handleGenericEvent(raid.getType(), raid);
         handleGenericEvent("MEMBER_JOIN", event);
     }
 
@@ -31,9 +54,36 @@ public class EventManager extends ListenerAdapter {
         handleGenericEvent("MEMBER_LEAVE", event);
     }
 
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        abuseDetector.onGuildLeave(event.getGuild().getIdLong());
+    }
+
     @Override
     public void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        // History is recorded before handlers run, so they can already see the message
+        messageHistory.onMessage(event.getMessage());
         if (event.getAuthor().isBot()) return;
+        DetectionEvent spam = abuseDetector.onMessage(event);
+        if (spam != null) handleGenericEvent(spam.getType(), spam);
         handleGenericEvent("MESSAGE_RECEIVED", event);
     }
+
+    @Override
+    public void onMessageUpdate(@NotNull MessageUpdateEvent event) {
+        messageHistory.onUpdate(event.getMessage());
+        if (event.getAuthor().isBot()) return;
+        handleGenericEvent("MESSAGE_UPDATE", event);
+    }
+
+    @Override
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        messageHistory.onDelete(event.getChannel().getIdLong(), List.of(event.getMessageIdLong()));
+        handleGenericEvent("MESSAGE_DELETE", event);
+    }
+
+    @Override
+    public void onMessageBulkDelete(@NotNull MessageBulkDeleteEvent event) {
+        messageHistory.onDelete(event.getChannel().getIdLong(), event.getMessageIds().stream().map(Long::parseLong).toList());
+    }
 }
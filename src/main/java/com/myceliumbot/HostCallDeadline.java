@@ -0,0 +1,84 @@
+package com.myceliumbot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of the handler running on the current thread, applied to the blocking calls it makes into Java.
+ * Interrupting a timed-out script only stops its JavaScript code; a database query or HTTP request that it
+ * is waiting for keeps the script busy until it returns. Such calls take their timeouts from here and
+ * register a way to abort themselves, so they end when the handler's time is up.
+ */
+final class HostCallDeadline {
+    private static final ThreadLocal<HostCallDeadline> current = new ThreadLocal<>();
+
+    private final long expiresAt;
+    // The blocking call in progress on the handler's thread; guarded by this
+    private Runnable abort;
+    private boolean expired;
+
+    private HostCallDeadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Sets the deadline for the calls made on the current thread, until {@link #clear()} is called on it.
+     */
+    static HostCallDeadline start(long timeoutMillis) {
+        HostCallDeadline deadline = new HostCallDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        current.set(deadline);
+        return deadline;
+    }
+
+    static void clear() {
+        current.remove();
+    }
+
+    /**
+     * @return The time left before the current thread's deadline, but at most {@code limitMillis} and at least 1.
+     *         Just {@code limitMillis} if the thread has no deadline.
+     */
+    static long remainingMillis(long limitMillis) {
+        HostCallDeadline deadline = current.get();
+        if (deadline == null) return limitMillis;
+        long left = TimeUnit.NANOSECONDS.toMillis(deadline.expiresAt - System.nanoTime());
+        return Math.max(1, Math.min(limitMillis, left));
+    }
+
+    /**
+     * Registers how to abort the call that is about to block the current thread, in case the deadline passes first.
+     * @return Removes the registration once the call has returned.
+     * @throws IllegalStateException If the deadline has already passed.
+     */
+    static Registration abortWith(Runnable abort) {
+        HostCallDeadline deadline = current.get();
+        if (deadline == null) return () -> { };
+        synchronized (deadline) {
+            if (deadline.expired) throw new IllegalStateException("The handler has timed out");
+            deadline.abort = abort;
+        }
+        return () -> {
+            synchronized (deadline) {
+                deadline.abort = null;
+            }
+        };
+    }
+
+    /**
+     * Aborts the call in progress, if any, and makes later calls fail right away. Called from the watchdog.
+     */
+    synchronized void expire() {
+        expired = true;
+        if (abort == null) return;
+        try {
+            abort.run();
+        } catch (RuntimeException e) {
+            System.err.println("Could not abort the call of a timed-out handler: " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -3,38 +3,77 @@ package com.myceliumbot;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 public class HttpUtils {
-    private int timeoutSeconds;
-    private boolean allowUnsafeConnections;
+    private final ScriptProfiler profiler = ScriptProfiler.getInstance();
+    private volatile OkHttpClient client;
 
     // Default constructor - uses config
     public HttpUtils() {
-        BotConfig config = BotConfig.getInstance();
-        this.timeoutSeconds = config.getHttpTimeoutSeconds();
-        this.allowUnsafeConnections = config.isAllowUnsafeConnections();
+        this.client = withTimeout(new OkHttpClient(), BotConfig.getInstance().getHttpTimeoutSeconds());
+        BotConfig.addListener((previous, current) -> {
+            if (current.getHttpTimeoutSeconds() != previous.getHttpTimeoutSeconds()) {
+                // Derived clients share the connection pool and dispatcher, so calls in progress are unaffected
+                client = withTimeout(client, current.getHttpTimeoutSeconds());
+            }
+        });
     }
 
-    private final OkHttpClient client = new OkHttpClient();
+    /**
+     * Applies the timeout to the whole call as well as to each phase, whose defaults would otherwise cut it short.
+     */
+    private static OkHttpClient withTimeout(OkHttpClient base, int seconds) {
+        Duration timeout = Duration.ofSeconds(Math.max(0, seconds));
+        return base.newBuilder()
+                .callTimeout(timeout)
+                .connectTimeout(timeout)
+                .readTimeout(timeout)
+                .writeTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Creates the call with its timeout cut down to the time the calling handler has left, if that is shorter.
+     */
+    private Call newCall(Request request) {
+        OkHttpClient client = this.client;
+        Call call = client.newCall(request);
+        if (client.callTimeoutMillis() > 0) {
+            call.timeout().timeout(HostCallDeadline.remainingMillis(client.callTimeoutMillis()), TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
 
     public String get(String url) {
         Request request = new Request.Builder().url(url).build();
-        try (Response response = client.newCall(request).execute()) {
+        long profile = profiler.enterHostCall();
+        Call call = newCall(request);
+        try (HostCallDeadline.Registration deadline = HostCallDeadline.abortWith(call::cancel);
+             Response response = call.execute()) {
             if (!response.isSuccessful()) return "Error: " + response.code();
             return response.body() != null ? response.body().string() : "Error: Empty response body";
         } catch (IOException e) {
             return "Error: " + e.getMessage();
+        } finally {
+            profiler.exitHostCall("http.get", profile);
         }
     }
 
     public String post(String url, String jsonBody) {
         RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json; charset=utf-8"));
         Request request = new Request.Builder().url(url).post(body).build();
-        try (Response response = client.newCall(request).execute()) {
+        long profile = profiler.enterHostCall();
+        Call call = newCall(request);
+        try (HostCallDeadline.Registration deadline = HostCallDeadline.abortWith(call::cancel);
+             Response response = call.execute()) {
             if (!response.isSuccessful()) return "Error: " + response.code();
             return response.body() != null ? response.body().string() : "Error: Empty response body";
         } catch (IOException e) {
             return "Error: " + e.getMessage();
+        } finally {
+            profiler.exitHostCall("http.post", profile);
         }
     }
 }
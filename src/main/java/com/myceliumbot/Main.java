@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +28,10 @@ import java.util.Objects;
 import java.util.Properties;
 
 public class Main {
-    private static JDA jda;
+    // How long JDA may take to finish its queued requests when the bot stops
+    private static final Duration JDA_SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private static volatile JDA jda;
     private static ScriptManager scriptManager;
 
     public static void main(String[] args) throws InterruptedException {
@@ -36,13 +40,17 @@ public class Main {
 
         // Load configuration and core services
         BotConfig config = BotConfig.getInstance();
+        BotConfig.startWatching();
         createDirectories(config);
         Dotenv dotenv = Dotenv.load();
         DatabaseManager dbManager = new DatabaseManager();
+        new DatabaseMaintenance(dbManager).start();
         HttpUtils httpUtils = new HttpUtils();
 
         // Initialize scriptManager and load scripts
         scriptManager = new ScriptManager(dbManager, httpUtils);
+        ScriptServices services = new ScriptServices(dbManager);
+        services.bind(scriptManager);
         List<SlashCommandData> commandsToRegister = scriptManager.loadScripts(); // This now returns the commands
 
         // Token check
@@ -55,28 +63,25 @@ public class Main {
             System.exit(1);
         }
 
-        // Configure activity
-        Activity activity;
-        switch (config.getActivityType().toUpperCase()) {
-            case "PLAYING": activity = Activity.playing(config.getActivityText()); break;
-            case "LISTENING": activity = Activity.listening(config.getActivityText()); break;
-            case "COMPETING": activity = Activity.competing(config.getActivityText()); break;
-            case "STREAMING": activity = Activity.streaming(config.getActivityText(), "https://www.twitch.tv/"); break;
-            default: activity = Activity.watching(config.getActivityText()); break;
-        }
-
-        // Build JDA
+        // Build JDA; its own shutdown hook is replaced by ours, which drains the outbound queue first
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(services.getOutbound()), "Main-shutdown"));
         jda = JDABuilder.createDefault(token)
                 .enableIntents(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT)
                 .enableCache(CacheFlag.MEMBER_OVERRIDES, CacheFlag.ROLE_TAGS)
-                .setActivity(activity)
+                .setActivity(createActivity(config))
                 .addEventListeners(
                         new CommandListener(scriptManager),
-                        new EventManager(scriptManager)
+                        new EventManager(scriptManager, services.getMessageHistory())
                 )
+                .setEnableShutdownHook(false)
                 .build();
 
         jda.awaitReady();
+        BotConfig.addListener((previous, current) -> {
+            if (!current.getActivityType().equals(previous.getActivityType()) || !current.getActivityText().equals(previous.getActivityText())) {
+                jda.getPresence().setActivity(createActivity(current));
+            }
+        });
 
         // Check for bot owners
         if (config.getOwnerIds().isEmpty()) {
@@ -97,9 +102,37 @@ public class Main {
         CommandRegistry.registerCommands(jda, commandsToRegister);
     }
 
+    /**
+     * Stops the bot in order: bulk actions still waiting in the outbound queue are handed to JDA
+     * while it can still send them, then JDA is shut down and given time to finish its requests.
+     */
+    private static void shutdown(OutboundQueue outbound) {
+        outbound.shutdown();
+        JDA current = jda;
+        if (current == null) return;
+        current.shutdown();
+        try {
+            if (!current.awaitShutdown(JDA_SHUTDOWN_TIMEOUT)) current.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.shutdownNow();
+        }
+    }
+
+    private static Activity createActivity(BotConfig config) {
+        switch (config.getActivityType().toUpperCase()) {
+            case "PLAYING": return Activity.playing(config.getActivityText());
+            case "LISTENING": return Activity.listening(config.getActivityText());
+            case "COMPETING": return Activity.competing(config.getActivityText());
+            case "STREAMING": return Activity.streaming(config.getActivityText(), "https://www.twitch.tv/");
+            default: return Activity.watching(config.getActivityText());
+        }
+    }
+
     private static void createDirectories(BotConfig config) {
         try {
             Files.createDirectories(Paths.get(config.getScriptsDirectory()));
+            Files.createDirectories(Paths.get(config.getPluginsDirectory()));
             Files.createDirectories(Paths.get(config.getLogsDirectory()));
             Files.createDirectories(Paths.get(config.getDatabasePath()).getParent());
         } catch (IOException e) {
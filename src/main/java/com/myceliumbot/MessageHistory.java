@@ -0,0 +1,244 @@
+package com.myceliumbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.dv8tion.jda.api.entities.Message;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most recent messages of every active guild channel, available to scripts as the global "messageHistory".
+ * Each channel keeps a fixed-size ring of its last messages, stored as parallel arrays, including
+ * edits and deletions, so features like snipe and edit logs do not need Discord's message history endpoint.
+ *
+ * The total size is capped: when the estimated memory use exceeds the limit, the channels that
+ * have not seen a message for the longest time are dropped first.
+ */
+public class MessageHistory {
+    // Rough per-message and per-string costs used to estimate memory use
+    private static final long MESSAGE_OVERHEAD_BYTES = 64;
+    private static final long STRING_OVERHEAD_BYTES = 40;
+
+    private final Map<Long, ChannelRing> channels = new LinkedHashMap<>(16, 0.75f, true);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private long totalBytes;
+
+    public MessageHistory() {
+        // Apply a lower memory limit right away instead of on the next message
+        BotConfig.addListener((previous, current) -> {
+            if (current.getMessageHistoryMaxBytes() < previous.getMessageHistoryMaxBytes()) evict();
+        });
+    }
+
+    /**
+     * Records a new guild message.
+     */
+    public synchronized void onMessage(Message message) {
+        int depth = BotConfig.getInstance().getMessageHistoryDepth();
+        if (depth <= 0 || !message.isFromGuild()) return;
+
+        ChannelRing ring = channels.get(message.getChannel().getIdLong());
+        if (ring == null) {
+            ring = new ChannelRing(depth);
+            channels.put(message.getChannel().getIdLong(), ring);
+            totalBytes += ring.bytes;
+        } else if (ring.ids.length != depth) {
+            totalBytes -= ring.bytes;
+            ring.reset(depth);
+            totalBytes += ring.bytes;
+        }
+
+        totalBytes -= ring.bytes;
+        ring.add(message.getIdLong(), message.getAuthor().getIdLong(), message.getAuthor().isBot(),
+                message.getTimeCreated().toInstant().toEpochMilli(), message.getContentRaw());
+        totalBytes += ring.bytes;
+        evict();
+    }
+
+    /**
+     * Records an edit. The content before the latest edit is kept as the previous content.
+     */
+    public synchronized void onUpdate(Message message) {
+        ChannelRing ring = channels.get(message.getChannel().getIdLong());
+        if (ring == null) return;
+        int slot = ring.find(message.getIdLong());
+        if (slot < 0) return;
+        totalBytes -= ring.bytes;
+        ring.edit(slot, message.getContentRaw(), System.currentTimeMillis());
+        totalBytes += ring.bytes;
+        evict();
+    }
+
+    /**
+     * Marks messages as deleted. Deleted messages stay in the ring until they are pushed out by newer ones.
+     */
+    public synchronized void onDelete(long channelId, List<Long> messageIds) {
+        ChannelRing ring = channels.get(channelId);
+        if (ring == null) return;
+        long now = System.currentTimeMillis();
+        for (long messageId : messageIds) {
+            int slot = ring.find(messageId);
+            if (slot >= 0 && ring.deletedAt[slot] == 0) ring.deletedAt[slot] = now;
+        }
+    }
+
+    /**
+     * Returns the most recent messages in a channel, newest first, as a JSON array.
+     * Each message has "id", "author_id", "bot", "content", "created_at", and when applicable
+     * "edited_at", "previous_content" and "deleted_at" (times are epoch milliseconds).
+     * @param includeDeleted Whether deleted messages are included.
+     */
+    public synchronized String recent(String channelId, int limit, boolean includeDeleted) {
+        ArrayNode result = mapper.createArrayNode();
+        ChannelRing ring = channels.get(Long.parseLong(channelId));
+        if (ring == null) return result.toString();
+        for (int i = 0, slot = ring.newest(); i < ring.count && result.size() < limit; i++, slot = ring.previous(slot)) {
+            if (includeDeleted || ring.deletedAt[slot] == 0) result.add(ring.toJson(mapper, slot));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the most recent messages of one author in a channel, newest first, as a JSON array.
+     */
+    public synchronized String byAuthor(String channelId, String authorId, int limit) {
+        ArrayNode result = mapper.createArrayNode();
+        ChannelRing ring = channels.get(Long.parseLong(channelId));
+        if (ring == null) return result.toString();
+        long author = Long.parseLong(authorId);
+        for (int i = 0, slot = ring.newest(); i < ring.count && result.size() < limit; i++, slot = ring.previous(slot)) {
+            if (ring.authors[slot] == author) result.add(ring.toJson(mapper, slot));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns a single message as a JSON object, or null if it is not in the history.
+     */
+    public synchronized String get(String channelId, String messageId) {
+        ChannelRing ring = channels.get(Long.parseLong(channelId));
+        if (ring == null) return null;
+        int slot = ring.find(Long.parseLong(messageId));
+        return slot >= 0 ? ring.toJson(mapper, slot).toString() : null;
+    }
+
+    /**
+     * Returns the most recently deleted message in a channel as a JSON object, or null if there is none.
+     */
+    public synchronized String lastDeleted(String channelId) {
+        ChannelRing ring = channels.get(Long.parseLong(channelId));
+        if (ring == null) return null;
+        int latest = -1;
+        for (int slot = 0; slot < ring.ids.length; slot++) {
+            if (ring.deletedAt[slot] != 0 && (latest < 0 || ring.deletedAt[slot] > ring.deletedAt[latest])) latest = slot;
+        }
+        return latest >= 0 ? ring.toJson(mapper, latest).toString() : null;
+    }
+
+    private synchronized void evict() {
+        long maxBytes = BotConfig.getInstance().getMessageHistoryMaxBytes();
+        Iterator<ChannelRing> coldest = channels.values().iterator();
+        // Always keep the channel that was just written to
+        while (totalBytes > maxBytes && channels.size() > 1 && coldest.hasNext()) {
+            totalBytes -= coldest.next().bytes;
+            coldest.remove();
+        }
+    }
+
+    private static long estimate(String content) {
+        return content == null ? 0 : STRING_OVERHEAD_BYTES + 2L * content.length();
+    }
+
+    /**
+     * A channel's last messages, one array per field, oldest overwritten first.
+     */
+    private static class ChannelRing {
+        long[] ids;
+        long[] authors;
+        boolean[] bots;
+        long[] createdAt;
+        long[] editedAt;
+        long[] deletedAt;
+        String[] contents;
+        String[] previousContents;
+        int next;
+        int count;
+        long bytes;
+
+        ChannelRing(int depth) {
+            reset(depth);
+        }
+
+        void reset(int depth) {
+            ids = new long[depth];
+            authors = new long[depth];
+            bots = new boolean[depth];
+            createdAt = new long[depth];
+            editedAt = new long[depth];
+            deletedAt = new long[depth];
+            contents = new String[depth];
+            previousContents = new String[depth];
+            next = 0;
+            count = 0;
+            bytes = depth * MESSAGE_OVERHEAD_BYTES;
+        }
+
+        void add(long id, long author, boolean bot, long created, String content) {
+            bytes -= estimate(contents[next]) + estimate(previousContents[next]);
+            ids[next] = id;
+            authors[next] = author;
+            bots[next] = bot;
+            createdAt[next] = created;
+            editedAt[next] = 0;
+            deletedAt[next] = 0;
+            contents[next] = content;
+            previousContents[next] = null;
+            bytes += estimate(content);
+            next = (next + 1) % ids.length;
+            count = Math.min(count + 1, ids.length);
+        }
+
+        void edit(int slot, String content, long time) {
+            bytes -= estimate(previousContents[slot]);
+            previousContents[slot] = contents[slot];
+            contents[slot] = content;
+            editedAt[slot] = time;
+            bytes += estimate(content);
+        }
+
+        int find(long id) {
+            for (int i = 0, slot = newest(); i < count; i++, slot = previous(slot)) {
+                if (ids[slot] == id) return slot;
+            }
+            return -1;
+        }
+
+        int newest() {
+            return previous(next);
+        }
+
+        int previous(int slot) {
+            return (slot + ids.length - 1) % ids.length;
+        }
+
+        ObjectNode toJson(ObjectMapper mapper, int slot) {
+            ObjectNode node = mapper.createObjectNode();
+            // Snowflakes are strings, since JavaScript numbers cannot hold them exactly
+            node.put("id", Long.toString(ids[slot]));
+            node.put("author_id", Long.toString(authors[slot]));
+            node.put("bot", bots[slot]);
+            node.put("content", contents[slot]);
+            node.put("created_at", createdAt[slot]);
+            if (editedAt[slot] != 0) {
+                node.put("edited_at", editedAt[slot]);
+                node.put("previous_content", previousContents[slot]);
+            }
+            if (deletedAt[slot] != 0) node.put("deleted_at", deletedAt[slot]);
+            return node;
+        }
+    }
+}
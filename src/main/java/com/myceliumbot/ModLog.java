@@ -0,0 +1,153 @@
+package com.myceliumbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Moderation case access for scripts, available as the global "modLog".
+ * History lookups use keyset pagination on the case id, so every page costs the same
+ * regardless of how deep it is. Per-user and per-guild counts come from summary tables
+ * that triggers keep up to date on every insert and delete into mod_logs, and keyword
+ * searches use the FTS5 index over case reasons.
+ */
+public class ModLog {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String COLUMNS = "id, guild_id, moderator_id, target_id, action, reason, timestamp";
+
+    private final DatabaseManager dbManager;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ModLog(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Records a moderation case.
+     * @return The id of the new case, or -1 if it could not be stored.
+     */
+    public long record(String guildId, String moderatorId, String targetId, String action, String reason) {
+        String sql = "INSERT INTO mod_logs (guild_id, moderator_id, target_id, action, reason) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             HostCallDeadline.Registration deadline = DatabaseManager.limitToHandlerDeadline(pstmt)) {
+            pstmt.setString(1, guildId);
+            pstmt.setString(2, moderatorId);
+            pstmt.setString(3, targetId);
+            pstmt.setString(4, action);
+            pstmt.setString(5, reason);
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                return keys.next() ? keys.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            System.err.println("ModLog record error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Returns a page of a user's cases in a guild, newest first, as a JSON array.
+     * @param beforeId Only cases with a smaller id are returned; pass 0 for the first page,
+     *                 and the id of the last case of a page to get the next one.
+     * @param limit The page size, at most 100.
+     */
+    public String history(String guildId, String targetId, long beforeId, int limit) {
+        return dbManager.query("SELECT " + COLUMNS + " FROM mod_logs WHERE guild_id = ? AND target_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                guildId, targetId, cursor(beforeId), pageSize(limit));
+    }
+
+    /**
+     * Returns a page of a guild's cases, optionally only those with the given action, newest first, as a JSON array.
+     * @param action The action to filter by, or null for all actions.
+     * @param beforeId Only cases with a smaller id are returned; pass 0 for the first page.
+     * @param limit The page size, at most 100.
+     */
+    public String guildHistory(String guildId, String action, long beforeId, int limit) {
+        if (action == null) {
+            return dbManager.query("SELECT " + COLUMNS + " FROM mod_logs WHERE guild_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                    guildId, cursor(beforeId), pageSize(limit));
+        }
+        return dbManager.query("SELECT " + COLUMNS + " FROM mod_logs WHERE guild_id = ? AND action = ? AND id < ? ORDER BY id DESC LIMIT ?",
+                guildId, action, cursor(beforeId), pageSize(limit));
+    }
+
+    /**
+     * Returns the number of cases per action for a user in a guild, as a JSON object like {"BAN": 1, "KICK": 2}.
+     */
+    public String summary(String guildId, String targetId) {
+        return counts("SELECT action, count FROM mod_log_summary WHERE guild_id = ? AND target_id = ?", guildId, targetId);
+    }
+
+    /**
+     * Returns the number of cases per action in a guild, as a JSON object like {"BAN": 10, "MEMBER_JOIN": 250}.
+     */
+    public String guildSummary(String guildId) {
+        return counts("SELECT action, count FROM mod_log_guild_summary WHERE guild_id = ?", guildId);
+    }
+
+    /**
+     * Searches a guild's case reasons for all of the given keywords, best matches first, as a JSON array.
+     * Each case has an extra "snippet" column with the matching words in bold.
+     * @param keywords Plain words to look for; the last word also matches as a prefix.
+     * @param page The page to return, starting at 0.
+     * @param limit The page size, at most 100.
+     */
+    public String search(String guildId, String keywords, int page, int limit) {
+        String match = toMatchQuery(keywords);
+        if (match.isEmpty()) return "[]";
+        int pageSize = pageSize(limit);
+        return dbManager.query("SELECT m.id, m.guild_id, m.moderator_id, m.target_id, m.action, m.reason, m.timestamp, " +
+                        "snippet(mod_logs_fts, 0, '**', '**', '...', 16) AS snippet " +
+                        "FROM mod_logs_fts JOIN mod_logs m ON m.id = mod_logs_fts.rowid " +
+                        "WHERE mod_logs_fts MATCH ? AND m.guild_id = ? ORDER BY bm25(mod_logs_fts) LIMIT ? OFFSET ?",
+                match, guildId, pageSize, (long) Math.max(0, page) * pageSize);
+    }
+
+    private String counts(String sql, String... params) {
+        ObjectNode result = mapper.createObjectNode();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             HostCallDeadline.Registration deadline = DatabaseManager.limitToHandlerDeadline(pstmt)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("ModLog summary error: " + e.getMessage());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Turns user input into an FTS5 query that cannot contain syntax errors:
+     * every word is quoted, and the last one is also matched as a prefix.
+     */
+    private static String toMatchQuery(String keywords) {
+        StringBuilder match = new StringBuilder();
+        String[] words = keywords == null ? new String[0] : keywords.trim().split("\\s+");
+        for (String word : words) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(word.replace("\"", "\"\"")).append('"');
+        }
+        if (match.length() > 0) match.append('*');
+        return match.toString();
+    }
+
+    private static long cursor(long beforeId) {
+        return beforeId > 0 ? beforeId : Long.MAX_VALUE;
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+}
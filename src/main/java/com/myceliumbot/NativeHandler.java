@@ -0,0 +1,51 @@
+package com.myceliumbot;
+
+import java.util.Map;
+
+/**
+ * Service provider interface for command and event handlers written in Java.
+ * Implementations are discovered with {@link java.util.ServiceLoader} from the jars
+ * in the plugins directory and are registered alongside the JavaScript scripts.
+ *
+ * A plugin jar lists its implementations in
+ * {@code META-INF/services/com.myceliumbot.NativeHandler}.
+ */
+public interface NativeHandler {
+
+    /**
+     * The name used to identify this handler in logs, in place of a script file name.
+     * @return A unique, human-readable name such as "utility-native".
+     */
+    String getName();
+
+    /**
+     * The metadata describing the commands and events this handler provides.
+     * Uses the exact same JSON array format as a script's metadata block.
+     * @return A JSON array of command and event definitions.
+     */
+    String getMetadata();
+
+    /**
+     * Called once after the handler is discovered, with the core services that scripts
+     * can access as global variables (for example "outbound").
+     * @param bindings The services, keyed by their global variable name.
+     */
+    default void initialize(Map<String, Object> bindings) {
+    }
+
+    /**
+     * Invoked for every command, event or scheduled task whose "handler" entry in the metadata
+     * belongs to this implementation. The arguments mirror the ones passed to JavaScript handlers.
+     * @param handlerName The "handler" value from the metadata entry being invoked.
+     * @param target The JDA event for commands and events, or the JDA instance for scheduled tasks.
+     * @param utils The shared embed helpers.
+     * @param dbManager The database manager.
+     * @param httpUtils The HTTP helper.
+     * @param scheduler The task scheduler.
+     * @param timeUtils The duration helpers.
+     * @return For commands, an optional reply for the core to send (a String, EmbedBuilder, MessageEmbed
+     *         or a collection of those), or null if the handler replied itself. Ignored for events and tasks.
+     */
+    Object handle(String handlerName, Object target, ScriptUtils utils, DatabaseManager dbManager,
+                  HttpUtils httpUtils, Scheduler scheduler, TimeUtils timeUtils);
+}
@@ -0,0 +1,298 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.UserSnowflake;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A script-facing pipeline for bulk outbound traffic, such as welcome messages and mass moderation.
+ * Actions are collected for a short window and then coalesced: messages to the same channel are
+ * merged, bans in the same guild become a single bulk ban, and role changes for the same member
+ * are applied in one request.
+ *
+ * At most a configured number of these requests are handed to JDA at any time. Interaction replies never
+ * go through this queue, so they are not stuck behind a burst of bulk traffic in JDA's rate limiter.
+ */
+public class OutboundQueue {
+    // Discord accepts at most this many users in a single bulk ban request
+    private static final int MAX_BULK_BAN_SIZE = 200;
+    // Built requests beyond this many waiting for a slot are dropped, so a stalled rate limit cannot exhaust memory
+    private static final int MAX_READY = 10_000;
+    // How long a shutdown waits for queued requests to be handed to JDA and finish
+    private static final long SHUTDOWN_DRAIN_MILLIS = 5000;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "OutboundQueue");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ResizableSemaphore inFlight;
+    // The limits currently applied; only touched by the executor thread after construction
+    private int maxInFlight;
+    private long batchWindowMillis;
+    private ScheduledFuture<?> flushTask;
+
+    // Pending actions, keyed so that actions on the same target are merged
+    private final Map<Long, ChannelBatch> channelBatches = new LinkedHashMap<>();
+    private final Map<String, BanBatch> banBatches = new LinkedHashMap<>();
+    private final Map<String, RoleChange> roleChanges = new LinkedHashMap<>();
+
+    // Requests that are built but wait for a free slot; only touched by the executor thread
+    private final Deque<RestAction<?>> ready = new ArrayDeque<>();
+
+    public OutboundQueue() {
+        BotConfig config = BotConfig.getInstance();
+        this.maxInFlight = config.getOutboundMaxInFlight();
+        this.inFlight = new ResizableSemaphore(maxInFlight);
+        this.batchWindowMillis = config.getOutboundBatchWindowMillis();
+        this.flushTask = executor.scheduleWithFixedDelay(this::flush, batchWindowMillis, batchWindowMillis, TimeUnit.MILLISECONDS);
+        BotConfig.addListener((previous, current) -> executor.execute(() -> applyLimits(current)));
+    }
+
+    /**
+     * Adopts changed limits. Requests already handed to JDA are not affected; a lower limit
+     * simply hands out fewer new slots until enough of them have finished.
+     */
+    private void applyLimits(BotConfig config) {
+        int delta = config.getOutboundMaxInFlight() - maxInFlight;
+        if (delta > 0) {
+            inFlight.release(delta);
+        } else if (delta < 0) {
+            inFlight.reducePermits(-delta);
+        }
+        maxInFlight = config.getOutboundMaxInFlight();
+        drain();
+
+        if (config.getOutboundBatchWindowMillis() != batchWindowMillis) {
+            batchWindowMillis = config.getOutboundBatchWindowMillis();
+            flushTask.cancel(false);
+            flushTask = executor.scheduleWithFixedDelay(this::flush, batchWindowMillis, batchWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a text message. Messages to the same channel within the window are joined line by line.
+     */
+    public synchronized void sendMessage(MessageChannel channel, String content) {
+        channelBatches.computeIfAbsent(channel.getIdLong(), id -> new ChannelBatch(channel)).lines.add(content);
+    }
+
+    /**
+     * Queues an embed. Embeds to the same channel within the window are sent together, up to ten per message.
+     */
+    public synchronized void sendEmbed(MessageChannel channel, MessageEmbed embed) {
+        channelBatches.computeIfAbsent(channel.getIdLong(), id -> new ChannelBatch(channel)).embeds.add(embed);
+    }
+
+    public void sendEmbed(MessageChannel channel, EmbedBuilder embed) {
+        sendEmbed(channel, embed.build());
+    }
+
+    /**
+     * Queues a ban. Bans in the same guild with the same reason are sent as one bulk ban request.
+     */
+    public synchronized void ban(Guild guild, UserSnowflake user, String reason) {
+        String key = guild.getId() + '\0' + (reason != null ? reason : "");
+        banBatches.computeIfAbsent(key, k -> new BanBatch(guild, reason)).users.add(user);
+    }
+
+    /**
+     * Queues a role to be added to a member. All role changes for the member are applied in one request.
+     */
+    public synchronized void addRole(Member member, Role role) {
+        RoleChange change = roleChangeFor(member);
+        change.toRemove.remove(role);
+        change.toAdd.add(role);
+    }
+
+    /**
+     * Queues a role to be removed from a member. All role changes for the member are applied in one request.
+     */
+    public synchronized void removeRole(Member member, Role role) {
+        RoleChange change = roleChangeFor(member);
+        change.toAdd.remove(role);
+        change.toRemove.add(role);
+    }
+
+    private RoleChange roleChangeFor(Member member) {
+        return roleChanges.computeIfAbsent(member.getGuild().getId() + '\0' + member.getId(), k -> new RoleChange(member));
+    }
+
+    private void flush() {
+        try {
+            List<RestAction<?>> built = new ArrayList<>();
+            synchronized (this) {
+                channelBatches.values().forEach(batch -> batch.toActions(built));
+                banBatches.values().forEach(batch -> batch.toActions(built));
+                roleChanges.values().forEach(change -> built.add(change.toAction()));
+                channelBatches.clear();
+                banBatches.clear();
+                roleChanges.clear();
+            }
+
+            int accepted = Math.min(built.size(), Math.max(0, MAX_READY - ready.size()));
+            ready.addAll(built.subList(0, accepted));
+            if (accepted < built.size()) {
+                System.err.printf("Outbound queue is full, dropped %d action(s).%n", built.size() - accepted);
+            }
+            drain();
+        } catch (Exception e) {
+            // Never let an exception cancel the periodic flush
+            System.err.println("Error flushing outbound queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands waiting requests to JDA while there are free slots. Runs on the executor thread, both
+     * after a flush and whenever a request finishes, so a freed slot is reused without waiting for the next tick.
+     */
+    private void drain() {
+        while (!ready.isEmpty() && inFlight.tryAcquire()) {
+            ready.poll().queue(
+                    success -> completed(),
+                    error -> {
+                        completed();
+                        System.err.println("Outbound action failed: " + error.getMessage());
+                    });
+        }
+    }
+
+    private void completed() {
+        inFlight.release();
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; whatever is still waiting is dropped
+        }
+    }
+
+    /**
+     * Sends everything still pending and waits a bounded time for it to finish, so that
+     * actions queued just before the bot stops are not lost. Must be called while JDA is still running.
+     */
+    public void shutdown() {
+        try {
+            executor.submit(this::flush).get(SHUTDOWN_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+            long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MILLIS;
+            while (System.currentTimeMillis() < deadline
+                    && !executor.submit(() -> ready.isEmpty() && inFlight.availablePermits() >= maxInFlight)
+                            .get(SHUTDOWN_DRAIN_MILLIS, TimeUnit.MILLISECONDS)) {
+                Thread.sleep(50);
+            }
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Error draining outbound queue on shutdown: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class ChannelBatch {
+        final MessageChannel channel;
+        final List<String> lines = new ArrayList<>();
+        final List<MessageEmbed> embeds = new ArrayList<>();
+
+        ChannelBatch(MessageChannel channel) {
+            this.channel = channel;
+        }
+
+        void toActions(List<RestAction<?>> out) {
+            StringBuilder content = new StringBuilder();
+            for (String line : lines) {
+                if (content.length() > 0 && content.length() + 1 + line.length() > Message.MAX_CONTENT_LENGTH) {
+                    out.add(channel.sendMessage(content.toString()));
+                    content.setLength(0);
+                }
+                if (content.length() > 0) content.append('\n');
+                content.append(line, 0, Math.min(line.length(), Message.MAX_CONTENT_LENGTH));
+            }
+            if (content.length() > 0) out.add(channel.sendMessage(content.toString()));
+
+            List<MessageEmbed> group = new ArrayList<>();
+            int groupLength = 0;
+            for (MessageEmbed embed : embeds) {
+                if (!group.isEmpty() && (group.size() == Message.MAX_EMBED_COUNT
+                        || groupLength + embed.getLength() > MessageEmbed.EMBED_MAX_LENGTH_BOT)) {
+                    out.add(channel.sendMessageEmbeds(group));
+                    group = new ArrayList<>();
+                    groupLength = 0;
+                }
+                group.add(embed);
+                groupLength += embed.getLength();
+            }
+            if (!group.isEmpty()) out.add(channel.sendMessageEmbeds(group));
+        }
+    }
+
+    private static class BanBatch {
+        final Guild guild;
+        final String reason;
+        final Set<UserSnowflake> users = new LinkedHashSet<>();
+
+        BanBatch(Guild guild, String reason) {
+            this.guild = guild;
+            this.reason = reason;
+        }
+
+        void toActions(List<RestAction<?>> out) {
+            List<UserSnowflake> all = new ArrayList<>(users);
+            for (int i = 0; i < all.size(); i += MAX_BULK_BAN_SIZE) {
+                List<UserSnowflake> chunk = all.subList(i, Math.min(i + MAX_BULK_BAN_SIZE, all.size()));
+                out.add(guild.ban(new ArrayList<>(chunk), Duration.ZERO).reason(reason));
+            }
+        }
+    }
+
+    private static class RoleChange {
+        final Member member;
+        final Set<Role> toAdd = new LinkedHashSet<>();
+        final Set<Role> toRemove = new LinkedHashSet<>();
+
+        RoleChange(Member member) {
+            this.member = member;
+        }
+
+        RestAction<?> toAction() {
+            return member.getGuild().modifyMemberRoles(member, toAdd, toRemove);
+        }
+    }
+
+    /**
+     * A semaphore whose number of permits can also be lowered, which {@link Semaphore} only allows subclasses to do.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.utils.FileUpload;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The built-in, owner-only "/profiler" command that controls the {@link ScriptProfiler}.
+ * Only registered when "enableScriptProfiler" is set in the configuration.
+ */
+public class ProfilerCommand implements NativeHandler {
+    private final ScriptProfiler profiler;
+
+    public ProfilerCommand(ScriptProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public String getName() {
+        return "profiler";
+    }
+
+    @Override
+    public String getMetadata() {
+        return """
+                [
+                  {
+                    "name": "profiler",
+                    "description": "Profile script handlers (bot owners only).",
+                    "handler": "handleProfiler",
+                    "subcommands": [
+                      { "name": "start", "description": "Start collecting samples and handler timings." },
+                      { "name": "stop", "description": "Stop collecting." },
+                      { "name": "dump", "description": "Send the collected data as flame graph files." },
+                      { "name": "reset", "description": "Discard the collected data." }
+                    ]
+                  }
+                ]
+                """;
+    }
+
+    @Override
+    public Object handle(String handlerName, Object target, ScriptUtils utils, DatabaseManager dbManager,
+                         HttpUtils httpUtils, Scheduler scheduler, TimeUtils timeUtils) {
+        SlashCommandInteractionEvent event = (SlashCommandInteractionEvent) target;
+        if (!BotConfig.getInstance().isUserOwner(event.getUser().getIdLong())) {
+            return utils.createErrorEmbed("Permission Denied", "Only bot owners can use the profiler.");
+        }
+
+        String subcommand = event.getSubcommandName() != null ? event.getSubcommandName() : "";
+        switch (subcommand) {
+            case "start":
+                if (profiler.start()) {
+                    return utils.createSuccessEmbed("Profiler Started", "Collecting JavaScript CPU samples and handler timings.");
+                }
+                return utils.createSuccessEmbed("Profiler Started", "The GraalVM CPU sampler is not available, so only handler timings are collected.");
+            case "stop":
+                profiler.stop();
+                return utils.createSuccessEmbed("Profiler Stopped", "Use `/profiler dump` to download the results.");
+            case "reset":
+                profiler.reset();
+                return utils.createSuccessEmbed("Profiler Reset", "All collected data was discarded.");
+            case "dump":
+                event.getHook().sendMessage("Folded stacks for flame graph tools: JavaScript CPU samples, and handler wall time in microseconds.")
+                        .addFiles(
+                                FileUpload.fromData(profiler.dumpGuestSamples().getBytes(StandardCharsets.UTF_8), "guest-samples.folded"),
+                                FileUpload.fromData(profiler.dumpHandlerTimes().getBytes(StandardCharsets.UTF_8), "handler-times.folded"))
+                        .queue();
+                return null;
+            default:
+                return utils.createErrorEmbed("Unknown Subcommand", "Use start, stop, dump or reset.");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of rendered command replies, used for commands that declare
+ * a "cache" block in their metadata. Entries are weighed by their text size and
+ * the least recently used ones are evicted once the configured limit is reached.
+ */
+public class ReplyCache {
+    // Rough per-entry bookkeeping cost, so that many tiny replies still count towards the limit
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxWeight;
+    private long currentWeight;
+
+    public ReplyCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Changes the size limit, evicting the least recently used entries right away if it shrinks.
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Returns the cached reply for the given key, or null if there is none or it has expired.
+     */
+    public synchronized Reply get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.reply;
+    }
+
+    /**
+     * Stores a reply for the given key, evicting the least recently used entries if needed.
+     */
+    public synchronized void put(String key, Reply reply, long ttlSeconds) {
+        long weight = ENTRY_OVERHEAD + key.length() + reply.weight();
+        if (weight > maxWeight || ttlSeconds <= 0) return;
+
+        remove(key);
+        entries.put(key, new Entry(reply, weight, System.currentTimeMillis() + ttlSeconds * 1000));
+        currentWeight += weight;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (currentWeight > maxWeight && it.hasNext()) {
+            currentWeight -= it.next().weight;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentWeight = 0;
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) currentWeight -= old.weight;
+    }
+
+    private record Entry(Reply reply, long weight, long expiresAt) {}
+
+    /**
+     * A rendered reply: optional text content plus any number of embeds.
+     */
+    public record Reply(String content, List<MessageEmbed> embeds) {
+
+        /**
+         * Converts a handler's return value into a reply. Accepts a String, an EmbedBuilder,
+         * a MessageEmbed, or a collection of those.
+         * @return The reply, or null if the value contains nothing that can be sent.
+         */
+        public static Reply of(Object value) {
+            StringBuilder content = new StringBuilder();
+            List<MessageEmbed> embeds = new ArrayList<>();
+            collect(value, content, embeds);
+            if (content.length() == 0 && embeds.isEmpty()) return null;
+            return new Reply(content.length() > 0 ? content.toString() : null, List.copyOf(embeds));
+        }
+
+        private static void collect(Object value, StringBuilder content, List<MessageEmbed> embeds) {
+            if (value instanceof CharSequence text) {
+                if (content.length() > 0) content.append('\n');
+                content.append(text);
+            } else if (value instanceof EmbedBuilder builder) {
+                embeds.add(builder.build());
+            } else if (value instanceof MessageEmbed embed) {
+                embeds.add(embed);
+            } else if (value instanceof Collection<?> collection) {
+                for (Object element : collection) collect(element, content, embeds);
+            }
+        }
+
+        public MessageCreateData toMessage() {
+            MessageCreateBuilder builder = new MessageCreateBuilder().setEmbeds(embeds);
+            if (content != null) builder.setContent(content);
+            return builder.build();
+        }
+
+        long weight() {
+            long weight = content != null ? content.length() : 0;
+            for (MessageEmbed embed : embeds) weight += embed.getLength();
+            return weight;
+        }
+    }
+
+    /**
+     * The "cache" declaration of a command's metadata.
+     * @param ttlSeconds How long a reply stays valid.
+     * @param scope One of "global", "guild" or "user".
+     * @param keyOptions The names of the options whose values are part of the cache key.
+     */
+    public record Policy(long ttlSeconds, String scope, List<String> keyOptions) {
+        private static final Set<String> SCOPES = Set.of("global", "guild", "user");
+
+        /**
+         * Reads a policy from a command's "cache" block. An unknown scope falls back to "user",
+         * the narrowest one, so a typo can never share replies between users.
+         */
+        @SuppressWarnings("unchecked")
+        public static Policy fromMetadata(String commandName, Map<String, Object> cacheMap) {
+            long ttl = ((Number) cacheMap.getOrDefault("ttlSeconds", 60)).longValue();
+            String scope = ((String) cacheMap.getOrDefault("scope", "global")).toLowerCase(Locale.ROOT);
+            if (!SCOPES.contains(scope)) {
+                System.err.printf("Unknown cache scope '%s' for command %s, using 'user' instead.%n", scope, commandName);
+                scope = "user";
+            }
+            List<String> keyOptions = (List<String>) cacheMap.getOrDefault("keyOptions", List.of());
+            return new Policy(ttl, scope, List.copyOf(keyOptions));
+        }
+
+        /**
+         * Builds the cache key for an invocation from the command path, the scope and the key options.
+         */
+        public String keyFor(SlashCommandInteractionEvent event) {
+            StringBuilder key = new StringBuilder(event.getFullCommandName());
+            switch (scope) {
+                case "guild" -> key.append('\0').append(event.getGuild() != null ? event.getGuild().getId() : "DM");
+                case "global" -> { }
+                default -> key.append('\0').append(event.getUser().getId());
+            }
+            for (String optionName : keyOptions) {
+                OptionMapping option = event.getOption(optionName);
+                key.append('\0').append(option != null ? option.getAsString() : "");
+            }
+            return key.toString();
+        }
+    }
+}
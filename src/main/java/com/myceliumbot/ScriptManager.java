@@ -2,17 +2,20 @@ package com.myceliumbot;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.AutoCompleteQuery;
+import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.PolyglotException;
 import org.graalvm.polyglot.Source;
@@ -21,79 +24,289 @@ import org.graalvm.polyglot.io.IOAccess;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ScriptManager {
+    // How long a timed-out script handler is given to stop after it has been interrupted
+    private static final Duration INTERRUPT_GRACE = Duration.ofSeconds(1);
+    // Each script's lane takes at most one thread at a time, so this bounds how many scripts run at once
+    private static final int HANDLER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    // How GraalJS reports a name that is not defined in the script's global scope
+    private static final Pattern UNDEFINED_NAME = Pattern.compile("ReferenceError: ([\\w$]+) is not defined");
+
     private final DatabaseManager dbManager;
     private final HttpUtils httpUtils;
     private Scheduler scheduler;
     private final TimeUtils timeUtils;
-    private Context context;
-    private final Map<String, String> commandScripts = new HashMap<>();
-    private final Map<String, List<String>> eventHandlers = new HashMap<>();
+    private final ScriptUtils scriptUtils;
+    // Shared by all script contexts, so parsed and compiled code is shared between them too
+    private final Engine engine = Engine.create();
+    // Replaced as a whole by every load; readers take it once and use that snapshot throughout
+    private volatile Registry registry = new Registry().freeze();
+    // Keyed by "script/handler", since different scripts may use the same handler names
+    private final Map<String, HandlerStats> handlerStats = new ConcurrentHashMap<>();
+    private final List<NativeHandler> builtinHandlers = new ArrayList<>();
+    private final Map<String, Object> bindings = new LinkedHashMap<>();
+    private final ReplyCache replyCache;
+    private final AutocompleteIndex autocomplete = new AutocompleteIndex();
+    private URLClassLoader pluginClassLoader;
     private final File scriptsDirectory;
-    private final BotConfig config;
+    private final File pluginsDirectory;
+    private final ScriptProfiler profiler = ScriptProfiler.getInstance();
+    private final ExecutorService eventThreads = Executors.newFixedThreadPool(HANDLER_THREADS, r -> {
+        Thread thread = new Thread(r, "ScriptHandlers");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ScriptWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Context interrupts wait up to INTERRUPT_GRACE, so they run here instead of holding up the watchdog
+    private final ExecutorService interrupts = Executors.newFixedThreadPool(HANDLER_THREADS, r -> {
+        Thread thread = new Thread(r, "ScriptInterrupts");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public ScriptManager(DatabaseManager dbManager, HttpUtils httpUtils) {
         this.dbManager = dbManager;
         this.httpUtils = httpUtils;
         this.timeUtils = new TimeUtils();
-        this.config = BotConfig.getInstance();
+        this.scriptUtils = new ScriptUtils();
+        BotConfig config = BotConfig.getInstance();
         this.scriptsDirectory = new File(config.getScriptsDirectory());
+        this.pluginsDirectory = new File(config.getPluginsDirectory());
+        this.replyCache = new ReplyCache(config.getReplyCacheMaxChars());
+        BotConfig.addListener((previous, current) -> replyCache.setMaxWeight(current.getReplyCacheMaxChars()));
+        addBinding("autocomplete", autocomplete);
+        addBinding("shared", new SharedValues());
+        if (config.isEnableScriptProfiler()) profiler.attach(engine);
     }
 
     public void setScheduler(Scheduler scheduler) {
         this.scheduler = scheduler;
     }
 
-    public List<SlashCommandData> loadScripts() {
-        commandScripts.clear();
-        eventHandlers.clear();
-        initializeContext();
+    /**
+     * Exposes a core service to scripts as a global variable with the given name.
+     * Native handlers receive the same services through {@link NativeHandler#initialize(Map)}.
+     * Takes effect on the next call to {@link #loadScripts()}.
+     */
+    public void addBinding(String name, Object service) {
+        bindings.put(name, service);
+    }
 
+    /**
+     * Registers a native handler that is part of the core rather than a plugin jar.
+     * Takes effect on the next call to {@link #loadScripts()}.
+     */
+    public void addNativeHandler(NativeHandler handler) {
+        builtinHandlers.add(handler);
+    }
+
+    /**
+     * Loads all scripts and native handlers from scratch. Commands and events keep going to the
+     * previous set until the new one is complete, then switch over all at once.
+     * @return The slash commands declared by the scripts and native handlers.
+     */
+    public synchronized List<SlashCommandData> loadScripts() {
+        Registry loading = new Registry();
         List<SlashCommandData> foundCommands = new ArrayList<>();
         File[] files = scriptsDirectory.listFiles((dir, name) -> name.endsWith(".js"));
         if (files == null) {
             System.out.println("Could not find scripts directory: " + scriptsDirectory.getPath());
-            return foundCommands;
+        } else {
+            System.out.println("Loading scripts and parsing metadata...");
+            foundCommands.addAll(loadScriptFiles(files, loading));
         }
+        foundCommands.addAll(loadPlugins(loading));
+        resolveHandlers(loading);
 
-        System.out.println("Loading scripts and parsing metadata...");
+        List<ScriptUnit> unloaded = new ArrayList<>(registry.scripts().values());
+        registry = loading.freeze();
+        replyCache.clear();
+        // Handlers still queued for the old contexts are skipped
+        unloaded.forEach(ScriptUnit::close);
+        return foundCommands;
+    }
+
+    /**
+     * Evaluates every script and registers the commands and handlers of those that evaluated successfully.
+     */
+    private List<SlashCommandData> loadScriptFiles(File[] files, Registry loading) {
+        List<SlashCommandData> foundCommands = new ArrayList<>();
         Pattern pattern = Pattern.compile("/\\*\\*([\\s\\S]*?)\\*/");
 
         for (File file : files) {
             String scriptName = file.getName();
-            if (config.getDisabledScripts().contains(scriptName)) {
+            if (BotConfig.getInstance().getDisabledScripts().contains(scriptName)) {
                 System.out.println("Skipping disabled script: " + scriptName);
                 continue;
             }
 
+            Context context = null;
             try {
                 String scriptContent = Files.readString(file.toPath());
-                Matcher matcher = pattern.matcher(scriptContent);
+                context = createContext();
+                context.eval(Source.newBuilder("js", scriptContent, scriptName).build());
+                loading.scripts().put(scriptName, new ScriptUnit(scriptName, context, null, eventThreads));
+                for (String name : context.getBindings("js").getMemberKeys()) {
+                    if (!bindings.containsKey(name)) loading.globalNames().putIfAbsent(name, scriptName);
+                }
 
+                Matcher matcher = pattern.matcher(scriptContent);
                 if (matcher.find()) {
                     String metadataBlock = matcher.group(1).trim();
-                    foundCommands.addAll(parseMetadata(metadataBlock, scriptName));
+                    foundCommands.addAll(parseMetadata(metadataBlock, scriptName, loading));
                 }
-
-                context.eval(Source.newBuilder("js", scriptContent, scriptName).build());
             } catch (IOException | PolyglotException e) {
+                // Nothing of a script that failed to evaluate is registered
+                if (context != null && !loading.scripts().containsKey(scriptName)) context.close();
                 System.err.println("Failed to load script: " + scriptName + " - " + e.getMessage());
-                if (config.isDebugMode()) e.printStackTrace();
+                if (BotConfig.getInstance().isDebugMode()) e.printStackTrace();
             }
         }
         return foundCommands;
     }
 
-    private List<SlashCommandData> parseMetadata(String json, String scriptName) {
+    /**
+     * Looks up the function of every declared script handler once, so dispatching is a single call.
+     */
+    private void resolveHandlers(Registry loading) {
+        loading.commandScripts().forEach((command, script) -> resolveHandler(loading, new HandlerRef(script, loading.commandHandlers().get(command))));
+        loading.eventHandlers().values().forEach(handlers -> handlers.forEach(handler -> resolveHandler(loading, handler)));
+    }
+
+    private void resolveHandler(Registry loading, HandlerRef ref) {
+        ScriptUnit unit = loading.scripts().get(ref.script());
+        if (unit == null || unit.context == null || ref.handler() == null || unit.handlers.containsKey(ref.handler())) return;
+        Value handler = resolveHandler(unit, ref.handler());
+        if (handler != null) {
+            unit.handlers.put(ref.handler(), handler);
+        } else {
+            System.err.printf("Handler function missing or invalid in script %s: %s%n", ref.script(), ref.handler());
+        }
+    }
+
+    /**
+     * @return The function with the given name in the script, or null if there is none.
+     */
+    private static Value resolveHandler(ScriptUnit unit, String handlerName) {
+        Value function = unit.context.getBindings("js").getMember(handlerName);
+        return function != null && function.canExecute() ? function : null;
+    }
+
+    /**
+     * Calls a script function with every service. JavaScript ignores arguments a function does not declare,
+     * so this one shape serves handlers written for (target, utils) as well as those with defaults or rest parameters.
+     */
+    private Value invoke(Value handler, Object target) {
+        return handler.execute(target, scriptUtils, dbManager, httpUtils, scheduler, timeUtils);
+    }
+
+    /**
+     * Discovers {@link NativeHandler} implementations from the jars in the plugins directory
+     * and registers their metadata the same way as a script's metadata block.
+     * @return The slash commands declared by the discovered handlers.
+     */
+    private List<SlashCommandData> loadPlugins(Registry loading) {
+        List<SlashCommandData> foundCommands = new ArrayList<>();
+        closePluginClassLoader();
+
+        for (NativeHandler handler : builtinHandlers) {
+            handler.initialize(Map.copyOf(bindings));
+            loading.scripts().put(handler.getName(), new ScriptUnit(handler.getName(), null, handler, eventThreads));
+            foundCommands.addAll(parseMetadata(handler.getMetadata(), handler.getName(), loading));
+        }
+
+        File[] jars = pluginsDirectory.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            return foundCommands;
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (File jar : jars) {
+            if (BotConfig.getInstance().getDisabledScripts().contains(jar.getName())) {
+                System.out.println("Skipping disabled plugin: " + jar.getName());
+                continue;
+            }
+            try {
+                urls.add(jar.toURI().toURL());
+            } catch (MalformedURLException e) {
+                System.err.println("Failed to load plugin: " + jar.getName() + " - " + e.getMessage());
+            }
+        }
+
+        System.out.println("Loading native handlers from " + urls.size() + " plugin jar(s)...");
+        pluginClassLoader = new URLClassLoader(urls.toArray(new URL[0]), ScriptManager.class.getClassLoader());
+        // Errors are caught per provider, so one broken plugin does not keep the others from loading
+        Iterator<NativeHandler> providers = ServiceLoader.load(NativeHandler.class, pluginClassLoader).iterator();
+        while (true) {
+            NativeHandler handler;
+            try {
+                if (!providers.hasNext()) break;
+                handler = providers.next();
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Skipping native handler that failed to load: " + e.getMessage());
+                if (BotConfig.getInstance().isDebugMode()) e.printStackTrace();
+                continue;
+            }
+            try {
+                handler.initialize(Map.copyOf(bindings));
+                loading.scripts().put(handler.getName(), new ScriptUnit(handler.getName(), null, handler, eventThreads));
+                foundCommands.addAll(parseMetadata(handler.getMetadata(), handler.getName(), loading));
+            } catch (RuntimeException e) {
+                System.err.println("Skipping native handler " + handler.getClass().getName() + ": " + e.getMessage());
+                if (BotConfig.getInstance().isDebugMode()) e.printStackTrace();
+            }
+        }
+        return foundCommands;
+    }
+
+    private void closePluginClassLoader() {
+        if (pluginClassLoader == null) return;
+        try {
+            pluginClassLoader.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close plugin class loader: " + e.getMessage());
+        }
+        pluginClassLoader = null;
+    }
+
+    private List<SlashCommandData> parseMetadata(String json, String scriptName, Registry loading) {
         List<SlashCommandData> commands = new ArrayList<>();
         ObjectMapper mapper = new ObjectMapper();
         try {
@@ -105,7 +318,7 @@ public class ScriptManager {
                     SlashCommandData command = Commands.slash(name, description);
 
                     if (def.containsKey("options")) {
-                        command.addOptions(parseOptions((List<Map<String, Object>>) def.get("options")));
+                        command.addOptions(parseOptions(scriptName, name, (List<Map<String, Object>>) def.get("options"), loading));
                     }
                     if (def.containsKey("subcommands")) {
                         for (Map<String, Object> subMap : (List<Map<String, Object>>) def.get("subcommands")) {
@@ -113,20 +326,24 @@ public class ScriptManager {
                         }
                     }
                     commands.add(command);
-                    commandScripts.put(name, scriptName);
+                    loading.commandScripts().put(name, scriptName);
+                    loading.commandHandlers().put(name, (String) def.get("handler"));
+                    if (def.containsKey("cache")) {
+                        loading.commandCachePolicies().put(name, ReplyCache.Policy.fromMetadata(name, (Map<String, Object>) def.get("cache")));
+                    }
                 } else if (def.containsKey("event") && def.containsKey("handler")) {
                     String eventType = ((String) def.get("event")).toUpperCase(Locale.ROOT);
-                    eventHandlers.computeIfAbsent(eventType, k -> new ArrayList<>()).add((String) def.get("handler"));
+                    loading.eventHandlers().computeIfAbsent(eventType, k -> new ArrayList<>()).add(new HandlerRef(scriptName, (String) def.get("handler")));
                 }
             }
         } catch (JsonProcessingException e) {
             System.err.println("Error parsing metadata in " + scriptName + ": " + e.getMessage());
         }
-        System.out.printf(" + Parsed %d command(s) and %d event handler type(s) from '%s'.%n", commands.size(), eventHandlers.size(), scriptName);
+        System.out.printf(" + Parsed %d command(s) and %d event handler type(s) from '%s'.%n", commands.size(), loading.eventHandlers().size(), scriptName);
         return commands;
     }
 
-    private List<OptionData> parseOptions(List<Map<String, Object>> optionsList) {
+    private List<OptionData> parseOptions(String scriptName, String commandName, List<Map<String, Object>> optionsList, Registry loading) {
         List<OptionData> options = new ArrayList<>();
         for (Map<String, Object> optMap : optionsList) {
             try {
@@ -134,117 +351,487 @@ public class ScriptManager {
                 String name = (String) optMap.get("name");
                 String desc = (String) optMap.get("description");
                 boolean required = (boolean) optMap.getOrDefault("required", false);
-                options.add(new OptionData(type, name, desc, required));
+                OptionData option = new OptionData(type, name, desc, required);
+                if (optMap.containsKey("choices")) {
+                    for (Map<String, Object> choice : (List<Map<String, Object>>) optMap.get("choices")) {
+                        addChoice(option, (String) choice.get("name"), choice.get("value"));
+                    }
+                }
+                if (optMap.containsKey("autocomplete") && optMap.containsKey("choices")) {
+                    // Discord rejects the whole command if an option has both, so keep the fixed choices
+                    System.err.printf("Option '%s' of command /%s in %s declares both choices and autocomplete; ignoring autocomplete.%n",
+                            name, commandName, scriptName);
+                } else if (optMap.containsKey("autocomplete")) {
+                    option.setAutoComplete(true);
+                    loading.autocompleteOptions().put(commandName + '\0' + name, (String) optMap.get("autocomplete"));
+                }
+                options.add(option);
             } catch (Exception e) {
-                System.err.println("Failed to parse option: " + optMap.get("name"));
+                System.err.printf("Failed to parse option '%s' of command /%s in %s: %s%n", optMap.get("name"), commandName, scriptName, e.getMessage());
             }
         }
         return options;
     }
 
-    // ... (The rest of your ScriptManager file remains the same)
-    public void handleCommand(SlashCommandInteractionEvent event) {
+    private static void addChoice(OptionData option, String name, Object value) {
+        switch (option.getType()) {
+            case INTEGER -> option.addChoice(name, ((Number) value).longValue());
+            case NUMBER -> option.addChoice(name, ((Number) value).doubleValue());
+            default -> option.addChoice(name, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Answers an autocomplete request from the option's index. No script code runs here,
+     * so the reply goes out well within Discord's deadline.
+     */
+    public void handleAutocomplete(CommandAutoCompleteInteractionEvent event) {
+        AutoCompleteQuery focused = event.getFocusedOption();
+        String index = registry.autocompleteOptions().get(event.getName() + '\0' + focused.getName());
+        if (index == null) {
+            event.replyChoices(List.of()).queue();
+            return;
+        }
+
+        String guildId = event.getGuild() != null ? event.getGuild().getId() : null;
+        List<Command.Choice> choices = new ArrayList<>();
+        autocomplete.search(index, guildId, focused.getValue(), AutocompleteIndex.MAX_CHOICES, (name, value) -> {
+            try {
+                switch (focused.getType()) {
+                    case INTEGER -> choices.add(new Command.Choice(name, Long.parseLong(value)));
+                    case NUMBER -> choices.add(new Command.Choice(name, Double.parseDouble(value)));
+                    default -> choices.add(new Command.Choice(name, value));
+                }
+            } catch (NumberFormatException e) {
+                // A value that does not fit a numeric option is skipped
+            }
+        });
+        event.replyChoices(choices).queue();
+    }
+
+    /**
+     * Runs a command's handler on its script's lane, the same way as an event handler and with the same
+     * timeout, and sends what it returns as the reply. Cached replies are sent right away instead.
+     * @return Completes when the command has been answered.
+     */
+    public CompletableFuture<Void> handleCommand(SlashCommandInteractionEvent event) {
+        Registry registry = this.registry;
         String commandName = event.getName();
-        String scriptName = commandScripts.get(commandName);
+        String scriptName = registry.commandScripts().get(commandName);
         if (scriptName == null) {
             event.getHook().sendMessage("Command script not found for: " + commandName).setEphemeral(true).queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         try {
-            String handlerName = getHandlerForCommand(commandName);
+            String handlerName = registry.commandHandlers().get(commandName);
             if (handlerName == null) {
                 event.getHook().sendMessage("Handler name not found for command: " + commandName).setEphemeral(true).queue();
-                return;
+                return CompletableFuture.completedFuture(null);
             }
 
-            Value handler = context.getBindings("js").getMember(handlerName);
-            if (handler == null || !handler.canExecute()) {
-                event.getHook().sendMessage("Handler function missing or invalid in script: " + handlerName).setEphemeral(true).queue();
-                return;
+            // Cached commands are answered straight from the cache without entering the handler
+            ReplyCache.Policy cachePolicy = registry.commandCachePolicies().get(commandName);
+            String cacheKey = cachePolicy != null ? cachePolicy.keyFor(event) : null;
+            if (cacheKey != null) {
+                ReplyCache.Reply cached = replyCache.get(cacheKey);
+                if (cached != null) {
+                    event.getHook().sendMessage(cached.toMessage()).queue();
+                    return CompletableFuture.completedFuture(null);
+                }
             }
 
-            ScriptUtils utils = new ScriptUtils();
-            try {
-                // Try calling with all the new tools first (for new scripts)
-                handler.execute(event, utils, dbManager, httpUtils, scheduler, timeUtils);
-            } catch (PolyglotException e) {
-                // If it's an argument count error, it's an old script. Fallback.
-                if (e.getMessage().contains("Invalid number of arguments")) {
-                    try {
-                        // Call with the old, simple signature
-                        handler.execute(event, utils);
-                    } catch (Exception inner) {
-                        event.getHook().sendMessage("Error executing command (fallback): " + inner.getMessage()).setEphemeral(true).queue();
-                        if (config.isDebugMode()) inner.printStackTrace();
+            ScriptUnit unit = registry.scripts().get(scriptName);
+            if (unit == null) {
+                event.getHook().sendMessage("Command script not loaded: " + scriptName).setEphemeral(true).queue();
+                return CompletableFuture.completedFuture(null);
+            }
+            long timeoutMillis = TimeUnit.SECONDS.toMillis(BotConfig.getInstance().getEventHandlerTimeoutSeconds());
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            unit.lane.execute(() -> {
+                try {
+                    Object result = runHandler(unit, handlerName, event, timeoutMillis);
+
+                    // Handlers may return their reply instead of sending it; only returned replies can be cached
+                    ReplyCache.Reply reply = ReplyCache.Reply.of(result);
+                    if (reply != null) {
+                        event.getHook().sendMessage(reply.toMessage()).queue();
+                        if (cacheKey != null) replyCache.put(cacheKey, reply, cachePolicy.ttlSeconds());
                     }
-                } else {
-                    // It's a different error, so re-throw it
-                    throw e;
+                } catch (Exception e) {
+                    commandFailed(event, e);
+                } finally {
+                    done.complete(null);
                 }
-            }
+            });
+            return done;
         } catch (Exception e) {
-            event.getHook().sendMessage("Error executing command: " + e.getMessage()).setEphemeral(true).queue();
-            if (config.isDebugMode()) e.printStackTrace();
+            commandFailed(event, e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    private String getHandlerForCommand(String commandName) {
-        String scriptName = commandScripts.get(commandName);
-        if (scriptName == null) return null;
+    private static void commandFailed(SlashCommandInteractionEvent event, Exception e) {
+        event.getHook().sendMessage("Error executing command: " + e.getMessage()).setEphemeral(true).queue();
+        if (BotConfig.getInstance().isDebugMode()) e.printStackTrace();
+    }
+
+    /**
+     * Runs a native or script handler and records it in the handler's statistics. A script's context
+     * is only ever entered by one thread at a time, so handlers of the same script wait for each other.
+     * @param timeoutMillis How long the handler may run before it is interrupted, or 0 for no limit.
+     * @return The handler's return value, converted to Java objects, or null.
+     */
+    private Object runHandler(ScriptUnit unit, String handlerName, Object target, long timeoutMillis) {
+        HandlerStats stats = handlerStats.computeIfAbsent(unit.name + '/' + handlerName, k -> new HandlerStats());
+        long profile = profiler.enterHandler(unit.name, handlerName);
+        long start = System.nanoTime();
+        Deadline deadline = new Deadline(unit.context);
+        boolean failed = true;
         try {
-            File scriptFile = new File(scriptsDirectory, scriptName);
-            String scriptContent = Files.readString(scriptFile.toPath());
-            Pattern pattern = Pattern.compile("/\\*\\*([\\s\\S]*?)\\*/");
-            Matcher matcher = pattern.matcher(scriptContent);
-            if (matcher.find()) {
-                String metadataBlock = matcher.group(1).trim();
-                JsonNode array = new ObjectMapper().readTree(metadataBlock);
-                for (JsonNode node : array) {
-                    if (node.has("name") && commandName.equals(node.get("name").asText())) {
-                        return node.get("handler").asText();
+            Object result;
+            if (unit.nativeHandler != null) {
+                deadline.start(timeoutMillis);
+                try {
+                    result = unit.nativeHandler.handle(handlerName, target, scriptUtils, dbManager, httpUtils, scheduler, timeUtils);
+                } finally {
+                    deadline.stop();
+                }
+            } else {
+                synchronized (unit) {
+                    if (unit.closed) throw new IllegalStateException("Script " + unit.name + " has been unloaded");
+                    // Scheduled tasks need not be declared in the metadata, so they are resolved on their first run
+                    Value handler = unit.handlers.computeIfAbsent(handlerName, name -> resolveHandler(unit, name));
+                    if (handler == null) throw new IllegalStateException("Handler function missing or invalid in script: " + handlerName);
+                    // The deadline only covers the time the handler has the context to itself
+                    deadline.start(timeoutMillis);
+                    try {
+                        result = toJava(invoke(handler, target));
+                    } finally {
+                        deadline.stop();
                     }
                 }
             }
-        } catch (Exception e) {
-            if (config.isDebugMode()) e.printStackTrace();
+            failed = false;
+            return result;
+        } catch (PolyglotException e) {
+            if (deadline.expired) throw new IllegalStateException("Timed out after " + timeoutMillis + " ms", e);
+            String owner = foreignNameOwner(unit, e);
+            if (owner != null) {
+                throw new IllegalStateException(e.getMessage() + " in " + unit.name + "; it is defined in " + owner
+                        + ", and scripts do not share top-level names. Use the \"shared\" global instead", e);
+            }
+            throw e;
+        } finally {
+            stats.record(System.nanoTime() - start, failed, deadline.expired);
+            profiler.exitHandler(profile);
+        }
+    }
+
+    /**
+     * Every script has its own global scope, so a name defined at the top level of another script
+     * is not defined in this one. Scripts written when all scripts shared one scope fail that way.
+     * @return The script that defines the name a ReferenceError is about, if it is another one.
+     */
+    private String foreignNameOwner(ScriptUnit unit, PolyglotException e) {
+        if (!e.isGuestException() || e.getMessage() == null) return null;
+        Matcher matcher = UNDEFINED_NAME.matcher(e.getMessage());
+        if (!matcher.find()) return null;
+        String owner = registry.globalNames().get(matcher.group(1));
+        return owner != null && !owner.equals(unit.name) ? owner : null;
+    }
+
+    /**
+     * Converts a handler's return value into plain Java objects: strings, host objects,
+     * and lists for JavaScript arrays. Anything else becomes null.
+     */
+    private Object toJava(Value value) {
+        if (value == null || value.isNull()) return null;
+        if (value.isString()) return value.asString();
+        if (value.isHostObject()) return value.asHostObject();
+        if (value.hasArrayElements()) {
+            List<Object> elements = new ArrayList<>();
+            for (long i = 0; i < value.getArraySize(); i++) {
+                elements.add(toJava(value.getArrayElement(i)));
+            }
+            return elements;
         }
         return null;
     }
 
     public boolean hasEventHandler(String eventType) {
-        return eventHandlers.containsKey(eventType.toUpperCase(Locale.ROOT));
+        return registry.eventHandlers().containsKey(eventType.toUpperCase(Locale.ROOT));
     }
 
-    public void executeEventHandler(String eventType, GenericEvent event) {
-        List<String> handlers = eventHandlers.get(eventType.toUpperCase(Locale.ROOT));
-        if (handlers == null) return;
-        // This part can be expanded with the same fallback logic as handleCommand if needed
-        handlers.forEach(handlerName -> {
-            try {
-                context.getBindings("js").getMember(handlerName).execute(event, new ScriptUtils(), dbManager, httpUtils, scheduler, timeUtils);
-            } catch (Exception e) {
-                System.err.printf("Error in event handler %s: %s%n", handlerName, e.getMessage());
+    /**
+     * Hands an event to every handler registered for its type, without waiting for them.
+     * Handlers of different scripts run at the same time, while the handlers of one script run one
+     * after another in the order the events were dispatched, so this must be called in event order.
+     * Every handler runs exactly once; one that fails or exceeds the configured timeout does not
+     * affect the others and is not retried.
+     * @return Completes when all handlers have finished.
+     */
+    public CompletableFuture<Void> dispatchEvent(String eventType, GenericEvent event) {
+        Registry registry = this.registry;
+        List<HandlerRef> handlers = registry.eventHandlers().get(eventType.toUpperCase(Locale.ROOT));
+        if (handlers == null) return CompletableFuture.completedFuture(null);
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(BotConfig.getInstance().getEventHandlerTimeoutSeconds());
+
+        CompletableFuture<?>[] handled = new CompletableFuture<?>[handlers.size()];
+        for (int i = 0; i < handled.length; i++) {
+            String handlerName = handlers.get(i).handler();
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            handled[i] = done;
+            ScriptUnit unit = registry.scripts().get(handlers.get(i).script());
+            if (unit == null) {
+                done.complete(null);
+                continue;
             }
-        });
+            unit.lane.execute(() -> {
+                try {
+                    runHandler(unit, handlerName, event, timeoutMillis);
+                } catch (Exception e) {
+                    System.err.printf("Error in event handler %s of %s: %s%n", handlerName, unit.name, e.getMessage());
+                } finally {
+                    done.complete(null);
+                }
+            });
+        }
+        return CompletableFuture.allOf(handled);
     }
 
     public void executeScheduledTask(String scriptFileName, String handlerName, JDA jda) {
-        // This part can also be expanded with the same fallback logic
+        ScriptUnit unit = registry.scripts().get(scriptFileName);
+        if (unit == null) {
+            System.err.printf("Scheduled task %s not found: script %s is not loaded%n", handlerName, scriptFileName);
+            return;
+        }
         try {
-            context.getBindings("js").getMember(handlerName).execute(jda, new ScriptUtils(), dbManager, httpUtils, scheduler, timeUtils);
+            runHandler(unit, handlerName, jda, 0);
         } catch (Exception e) {
             System.err.printf("Error in scheduled task %s: %s%n", handlerName, e.getMessage());
         }
     }
 
-    private void initializeContext() {
-        context = Context.newBuilder("js")
+    /**
+     * @return The invocation statistics of every handler that has run, keyed by "script/handler".
+     */
+    public Map<String, HandlerStats> getHandlerStats() {
+        return Collections.unmodifiableMap(handlerStats);
+    }
+
+    private Context createContext() {
+        Context context = Context.newBuilder("js")
+                .engine(engine)
                 .allowHostAccess(HostAccess.ALL)
                 .allowHostClassLookup(s -> true)
                 .allowIO(IOAccess.ALL)
-                .allowAllAccess(config.isEnableJsConsoleAccess())
+                .allowAllAccess(BotConfig.getInstance().isEnableJsConsoleAccess())
                 .option("js.ecmascript-version", "2022")
                 .build();
+        Value jsBindings = context.getBindings("js");
+        bindings.forEach(jsBindings::putMember);
+        return context;
+    }
+
+    /**
+     * A handler function of a script. Handler names are only unique within their script.
+     */
+    private record HandlerRef(String script, String handler) {}
+
+    /**
+     * Where every command, event and handler is found. Filled in by a load through its mutable maps,
+     * then published as a {@link #freeze() frozen} copy that is never modified again.
+     * @param commandScripts The script of each command, by command name.
+     * @param commandHandlers The handler of each command, by command name.
+     * @param eventHandlers The handlers of each event type, in the order they were declared.
+     * @param autocompleteOptions Index names of autocompleted options, keyed by command name and option name.
+     * @param globalNames The script that first defines each top-level name, for explaining ReferenceErrors.
+     */
+    private record Registry(Map<String, ScriptUnit> scripts, Map<String, String> commandScripts,
+                            Map<String, String> commandHandlers, Map<String, List<HandlerRef>> eventHandlers,
+                            Map<String, ReplyCache.Policy> commandCachePolicies,
+                            Map<String, String> autocompleteOptions, Map<String, String> globalNames) {
+
+        Registry() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        Registry freeze() {
+            Map<String, List<HandlerRef>> frozenEvents = new HashMap<>();
+            eventHandlers.forEach((type, handlers) -> frozenEvents.put(type, Collections.unmodifiableList(new ArrayList<>(handlers))));
+            return new Registry(frozen(scripts), frozen(commandScripts), frozen(commandHandlers), frozen(frozenEvents),
+                    frozen(commandCachePolicies), frozen(autocompleteOptions), frozen(globalNames));
+        }
+
+        // Unlike Map.copyOf, keeps the null values that incomplete metadata can produce
+        private static <K, V> Map<K, V> frozen(Map<K, V> map) {
+            return Collections.unmodifiableMap(new HashMap<>(map));
+        }
+    }
+
+    /**
+     * A loaded script file or native handler. Every script has its own context, so scripts can run
+     * at the same time, and a lane that runs its event handlers one at a time in arrival order.
+     */
+    private static final class ScriptUnit {
+        final String name;
+        // Exactly one of these is set
+        final Context context;
+        final NativeHandler nativeHandler;
+        final Lane lane;
+        final Map<String, Value> handlers = new ConcurrentHashMap<>();
+        // Guarded by this, like every use of the context
+        boolean closed;
+
+        ScriptUnit(String name, Context context, NativeHandler nativeHandler, Executor executor) {
+            this.name = name;
+            this.context = context;
+            this.nativeHandler = nativeHandler;
+            this.lane = new Lane(executor);
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (context != null) context.close();
+        }
+    }
+
+    /**
+     * Runs tasks one at a time in submission order on a shared executor, without holding a thread while idle.
+     */
+    private static final class Lane implements Executor {
+        private final Executor executor;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private boolean draining;
+
+        Lane(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+            if (!draining) {
+                draining = true;
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Interrupts a handler once its time is up. Script handlers are interrupted through their context;
+     * native handlers get a thread interrupt, which they may or may not respond to.
+     */
+    private final class Deadline implements Runnable {
+        private final Context context;
+        private final Thread thread = Thread.currentThread();
+        private ScheduledFuture<?> timer;
+        private boolean stopped;
+        private Future<?> interrupting;
+        private HostCallDeadline hostCalls;
+        volatile boolean expired;
+
+        Deadline(Context context) {
+            this.context = context;
+        }
+
+        void start(long timeoutMillis) {
+            if (timeoutMillis <= 0) return;
+            // Database and HTTP calls made by the handler end at the same time, as interrupts cannot reach them
+            hostCalls = HostCallDeadline.start(timeoutMillis);
+            timer = watchdog.schedule(this, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void run() {
+            // Checked under the lock so that a handler which has just finished is never interrupted
+            if (stopped) return;
+            expired = true;
+            hostCalls.expire();
+            if (context == null) {
+                thread.interrupt();
+            } else {
+                interrupting = interrupts.submit(this::interruptContext);
+            }
+        }
+
+        private void interruptContext() {
+            try {
+                context.interrupt(INTERRUPT_GRACE);
+            } catch (TimeoutException e) {
+                // Interrupts only take effect in JavaScript code, not while it waits for a Java call to return
+                System.err.println("Timed-out handler is still running, probably in a blocking call");
+            } catch (RuntimeException e) {
+                System.err.println("Could not interrupt timed-out handler: " + e.getMessage());
+            }
+        }
+
+        void stop() {
+            Future<?> pending;
+            synchronized (this) {
+                stopped = true;
+                if (timer != null) timer.cancel(false);
+                // Clear an interrupt meant for the native handler so it does not leak into the next task on this thread
+                if (context == null && expired) Thread.interrupted();
+                pending = interrupting;
+            }
+            HostCallDeadline.clear();
+            if (pending == null) return;
+            // The caller still owns the context, so an interrupt that is still under way cannot reach the next handler
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Already reported by interruptContext
+            }
+        }
+    }
+
+    /**
+     * Invocation counts and timings of one handler.
+     */
+    public static final class HandlerStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean failed, boolean timedOut) {
+            calls.increment();
+            if (failed) errors.increment();
+            if (timedOut) timeouts.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCalls() { return calls.sum(); }
+
+        /**
+         * @return The number of calls that threw, including the ones that timed out.
+         */
+        public long getErrors() { return errors.sum(); }
+
+        public long getTimeouts() { return timeouts.sum(); }
+
+        public long getTotalNanos() { return totalNanos.sum(); }
+
+        public long getMaxNanos() { return maxNanos.get(); }
     }
-}
\ No newline at end of file
+}
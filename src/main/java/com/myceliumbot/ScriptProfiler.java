@@ -0,0 +1,186 @@
+package com.myceliumbot;
+
+import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.tools.profiler.CPUSampler;
+import com.oracle.truffle.tools.profiler.CPUSamplerData;
+import com.oracle.truffle.tools.profiler.ProfilerNode;
+import org.graalvm.polyglot.Engine;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in profiler for script handlers. While running, it collects two kinds of data:
+ * - CPU samples of the JavaScript code, taken by GraalVM's CPU sampler.
+ * - Wall-clock time per script and handler, split into the time spent in database
+ *   and HTTP calls and the rest of the handler.
+ *
+ * Both are reported in the "folded stacks" format understood by flame graph tools
+ * such as flamegraph.pl and speedscope. When not running, every hook is a single volatile read.
+ */
+public class ScriptProfiler {
+    private static final ScriptProfiler instance = new ScriptProfiler();
+
+    private volatile boolean running;
+    private Engine engine;
+    private final ThreadLocal<String> currentHandler = new ThreadLocal<>();
+    private final Map<String, LongAdder> handlerNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> hostCallNanos = new ConcurrentHashMap<>();
+
+    public static ScriptProfiler getInstance() {
+        return instance;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts collecting samples and handler timings.
+     * @return False if the CPU sampler is not available, in which case only handler timings are collected.
+     */
+    public synchronized boolean start() {
+        running = true;
+        CPUSampler sampler = sampler();
+        if (sampler == null) return false;
+        sampler.setCollecting(true);
+        return true;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        CPUSampler sampler = sampler();
+        if (sampler != null) sampler.setCollecting(false);
+    }
+
+    public synchronized void reset() {
+        handlerNanos.clear();
+        hostCallNanos.clear();
+        CPUSampler sampler = sampler();
+        if (sampler != null) sampler.clearData();
+    }
+
+    /**
+     * Samples the engine that all script contexts run on.
+     */
+    synchronized void attach(Engine engine) {
+        this.engine = engine;
+        CPUSampler sampler = sampler();
+        if (sampler != null && running) sampler.setCollecting(true);
+    }
+
+    private CPUSampler sampler() {
+        if (engine == null) return null;
+        try {
+            return CPUSampler.find(engine);
+        } catch (RuntimeException | LinkageError e) {
+            // The profiler tool is not on the classpath
+            return null;
+        }
+    }
+
+    /**
+     * Marks the start of a handler invocation on the current thread.
+     * @return A token for {@link #exitHandler(long)}, or 0 if the profiler is not running.
+     */
+    public long enterHandler(String scriptName, String handlerName) {
+        if (!running) return 0;
+        currentHandler.set(frame(scriptName) + ';' + frame(handlerName));
+        return System.nanoTime();
+    }
+
+    public void exitHandler(long start) {
+        if (start == 0) return;
+        String handler = currentHandler.get();
+        currentHandler.remove();
+        if (handler != null) {
+            handlerNanos.computeIfAbsent(handler, k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Marks the start of a host call, such as a database query, made from a handler.
+     * @return A token for {@link #exitHostCall(String, long)}, or 0 if there is nothing to record.
+     */
+    public long enterHostCall() {
+        if (!running || currentHandler.get() == null) return 0;
+        return System.nanoTime();
+    }
+
+    public void exitHostCall(String name, long start) {
+        if (start == 0) return;
+        String handler = currentHandler.get();
+        if (handler != null) {
+            hostCallNanos.computeIfAbsent(handler + ';' + name, k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the JavaScript CPU samples as folded stacks, one "frame;frame;frame count" line per stack.
+     */
+    public synchronized String dumpGuestSamples() {
+        Map<String, Long> stacks = new TreeMap<>();
+        CPUSampler sampler = sampler();
+        if (sampler != null) {
+            for (CPUSamplerData data : sampler.getData().values()) {
+                for (Collection<ProfilerNode<CPUSampler.Payload>> roots : data.getThreadData().values()) {
+                    for (ProfilerNode<CPUSampler.Payload> root : roots) {
+                        foldSamples(root, "", stacks);
+                    }
+                }
+            }
+        }
+        return format(stacks);
+    }
+
+    private void foldSamples(ProfilerNode<CPUSampler.Payload> node, String parent, Map<String, Long> stacks) {
+        String path = parent.isEmpty() ? frame(node) : parent + ';' + frame(node);
+        int selfHits = node.getPayload().getSelfHitCount();
+        if (selfHits > 0) stacks.merge(path, (long) selfHits, Long::sum);
+        for (ProfilerNode<CPUSampler.Payload> child : node.getChildren()) {
+            foldSamples(child, path, stacks);
+        }
+    }
+
+    /**
+     * Returns the wall-clock time of every script handler as folded stacks in microseconds,
+     * with database and HTTP calls as child frames of the handler that made them.
+     */
+    public String dumpHandlerTimes() {
+        Map<String, Long> stacks = new TreeMap<>();
+        handlerNanos.forEach((handler, nanos) -> stacks.put(handler, nanos.sum()));
+        hostCallNanos.forEach((path, nanos) -> {
+            long hostNanos = nanos.sum();
+            stacks.put(path, hostNanos);
+            // Folded stacks hold self time, so host time is taken out of the handler's own line
+            String handler = path.substring(0, path.lastIndexOf(';'));
+            stacks.computeIfPresent(handler, (k, total) -> Math.max(0, total - hostNanos));
+        });
+        stacks.replaceAll((path, nanos) -> nanos / 1000);
+        return format(stacks);
+    }
+
+    private static String frame(ProfilerNode<CPUSampler.Payload> node) {
+        String name = node.getRootName() != null ? node.getRootName() : "<unknown>";
+        SourceSection section = node.getSourceSection();
+        if (section != null && section.isAvailable()) {
+            name += " (" + section.getSource().getName() + ":" + section.getStartLine() + ")";
+        }
+        return frame(name);
+    }
+
+    private static String frame(String name) {
+        return name.replace(';', ',');
+    }
+
+    private static String format(Map<String, Long> stacks) {
+        StringBuilder out = new StringBuilder();
+        stacks.forEach((path, weight) -> {
+            if (weight > 0) out.append(path).append(' ').append(weight).append('\n');
+        });
+        return out.toString();
+    }
+}
@@ -0,0 +1,45 @@
+package com.myceliumbot;
+
+/**
+ * The core services that scripts reach as globals: "outbound", "modLog", "counters" and "messageHistory",
+ * plus the "/profiler" command when it is enabled. The bot and the load harness both bind scripts through
+ * this class, so a load test runs against exactly the services the bot provides.
+ */
+public class ScriptServices {
+    private final OutboundQueue outbound;
+    private final ModLog modLog;
+    private final Counters counters;
+    private final MessageHistory messageHistory;
+
+    /**
+     * Creates the services and starts the ones that run in the background.
+     */
+    public ScriptServices(DatabaseManager dbManager) {
+        this.outbound = new OutboundQueue();
+        this.modLog = new ModLog(dbManager);
+        this.counters = new Counters(dbManager);
+        this.counters.start();
+        this.messageHistory = new MessageHistory();
+    }
+
+    /**
+     * Makes the services available to scripts. Takes effect on the next call to {@link ScriptManager#loadScripts()}.
+     */
+    public void bind(ScriptManager scriptManager) {
+        scriptManager.addBinding("outbound", outbound);
+        scriptManager.addBinding("modLog", modLog);
+        scriptManager.addBinding("counters", counters);
+        scriptManager.addBinding("messageHistory", messageHistory);
+        if (BotConfig.getInstance().isEnableScriptProfiler()) {
+            scriptManager.addNativeHandler(new ProfilerCommand(ScriptProfiler.getInstance()));
+        }
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+}
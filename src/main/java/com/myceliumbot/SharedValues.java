@@ -0,0 +1,59 @@
+package com.myceliumbot;
+
+import org.graalvm.polyglot.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named values that all scripts can read and write, available to scripts as the global "shared".
+ * Every script has its own global scope, so this is how one script hands data to another.
+ *
+ * JavaScript objects and functions belong to the script that created them and cannot be used
+ * by another script, so only strings, numbers, booleans and Java objects can be stored.
+ * Objects can be stored as JSON strings. Values are kept in memory until the bot stops.
+ */
+public class SharedValues {
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * @return The value stored under the key, or null if there is none.
+     */
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Stores a value under the key, replacing any previous one. Storing null removes the key.
+     * @throws IllegalArgumentException If the value is a JavaScript object or function.
+     */
+    public void set(String key, Value value) {
+        if (value == null || value.isNull()) {
+            values.remove(key);
+        } else if (value.isString()) {
+            values.put(key, value.asString());
+        } else if (value.isBoolean()) {
+            values.put(key, value.asBoolean());
+        } else if (value.isNumber()) {
+            values.put(key, value.fitsInLong() ? (Object) value.asLong() : (Object) value.asDouble());
+        } else if (value.isHostObject()) {
+            values.put(key, value.asHostObject());
+        } else {
+            throw new IllegalArgumentException("Only strings, numbers, booleans and Java objects can be shared; store objects with JSON.stringify");
+        }
+    }
+
+    public boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    public void remove(String key) {
+        values.remove(key);
+    }
+
+    public List<String> keys() {
+        return new ArrayList<>(values.keySet());
+    }
+}
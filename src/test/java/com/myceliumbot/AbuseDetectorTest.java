@@ -0,0 +1,91 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AbuseDetectorTest {
+    private final FakeJda fake = new FakeJda();
+    private final AbuseDetector detector = new AbuseDetector();
+    private long responseNumber;
+
+    @BeforeEach
+    void setUp() {
+        BotConfig.override(Map.of(
+                "antiRaidEnabled", true,
+                "raidJoinThreshold", 3,
+                "raidJoinWindowSeconds", 60,
+                "spamWindowSeconds", 60,
+                "spamMessageThreshold", 5,
+                "spamDuplicateThreshold", 3,
+                "spamMentionThreshold", 100,
+                "spamLinkThreshold", 2));
+    }
+
+    @Test
+    void reportsARaidOnceTheRingIsFull() {
+        assertNull(join(1, 10));
+        assertNull(join(1, 11));
+        DetectionEvent raid = join(1, 12);
+        assertNotNull(raid);
+        assertEquals(DetectionEvent.RAID_DETECTED, raid.getType());
+        assertEquals(3, raid.getCount());
+
+        // Alerts once per window, and other guilds keep their own ring
+        assertNull(join(1, 13));
+        assertNull(join(2, 14));
+        assertNull(join(2, 15));
+        assertNotNull(join(2, 16));
+    }
+
+    @Test
+    void forgetsAGuildItLeaves() {
+        join(1, 10);
+        join(1, 11);
+        detector.onGuildLeave(1);
+
+        assertNull(join(1, 12));
+        assertNull(join(1, 13));
+        assertNotNull(join(1, 14));
+    }
+
+    @Test
+    void reportsDuplicateMessagesPerUser() {
+        assertNull(message(1, 10, "buy my stuff"));
+        assertNull(message(1, 10, "BUY MY STUFF "));
+        assertNull(message(1, 11, "buy my stuff"));
+        DetectionEvent spam = message(1, 10, "buy my stuff");
+        assertNotNull(spam);
+        assertEquals(DetectionEvent.SPAM_DETECTED, spam.getType());
+        assertEquals("duplicates", spam.getReason());
+        assertEquals(3, spam.getCount());
+
+        assertNull(message(1, 10, "buy my stuff"));
+    }
+
+    @Test
+    void countsLinksAcrossTheRing() {
+        assertNull(message(1, 10, "see https://example.com"));
+        DetectionEvent spam = message(1, 10, "and http://example.org");
+        assertNotNull(spam);
+        assertEquals("links", spam.getReason());
+        assertEquals(2, spam.getCount());
+    }
+
+    private DetectionEvent join(long guild, long user) {
+        return detector.onMemberJoin(new GuildMemberJoinEvent(fake.jda(), responseNumber++, fake.member(guild, user)));
+    }
+
+    private DetectionEvent message(long guild, long user, String content) {
+        long id = responseNumber++;
+        return detector.onMessage(new MessageReceivedEvent(fake.jda(), id,
+                fake.message(id, fake.channel(guild, guild * 10), fake.member(guild, user), content)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.myceliumbot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AutocompleteIndexTest {
+    private final AutocompleteIndex index = new AutocompleteIndex();
+
+    @Test
+    void searchMatchesPrefixesIgnoringCase() {
+        index.replaceAll("tags", null, List.of("Apple", "apricot", "Banana", "app"));
+        assertEquals(List.of("app", "Apple", "apricot"), index.search("tags", null, "AP", 25));
+        assertEquals(List.of("app", "Apple"), index.search("tags", null, "app", 25));
+    }
+
+    @Test
+    void searchStopsAtTheEndsOfTheList() {
+        index.replaceAll("tags", null, List.of("alpha", "beta", "gamma"));
+        assertEquals(List.of("alpha", "beta", "gamma"), index.search("tags", null, "", 25));
+        assertEquals(List.of("alpha", "beta", "gamma"), index.search("tags", null, null, 25));
+        assertEquals(List.of("alpha"), index.search("tags", null, "a", 25));
+        assertEquals(List.of("gamma"), index.search("tags", null, "gamma", 25));
+        assertEquals(List.of(), index.search("tags", null, "gammas", 25));
+        assertEquals(List.of(), index.search("tags", null, "0", 25));
+        assertEquals(List.of(), index.search("tags", null, "zeta", 25));
+        assertEquals(List.of(), index.search("missing", null, "", 25));
+    }
+
+    @Test
+    void guildSuggestionsComeFirstAndShareTheLimit() {
+        index.replaceAll("roles", null, List.of("albatross", "alder", "all"));
+        index.replaceAll("roles", "1", List.of("alpha", "alps"));
+        assertEquals(List.of("alpha", "alps", "albatross"), index.search("roles", "1", "al", 3));
+        assertEquals(List.of("alpha"), index.search("roles", "1", "al", 1));
+        assertEquals(List.of("albatross", "alder", "all"), index.search("roles", "2", "al", 25));
+    }
+
+    @Test
+    void putReplacesASuggestionWithTheSameName() {
+        index.put("tags", null, "Foo", "1");
+        index.put("tags", null, "FOO", "2");
+        index.put("tags", null, "bar");
+
+        List<String> found = new ArrayList<>();
+        index.search("tags", null, "", 25, (name, value) -> found.add(name + "=" + value));
+        assertEquals(List.of("bar=bar", "FOO=2"), found);
+    }
+
+    @Test
+    void replaceAllKeepsTheLastOfDuplicateNames() {
+        index.replaceAll("tags", null, List.of("x", "y", "X"), List.of("1", "2", "3"));
+
+        List<String> found = new ArrayList<>();
+        index.search("tags", null, "", 25, (name, value) -> found.add(name + "=" + value));
+        assertEquals(List.of("X=3", "y=2"), found);
+    }
+
+    @Test
+    void removeAndClear() {
+        index.replaceAll("tags", null, List.of("a", "b", "c"));
+        index.remove("tags", null, "B");
+        index.remove("tags", null, "missing");
+        assertEquals(List.of("a", "c"), index.search("tags", null, "", 25));
+
+        index.clear("tags", null);
+        assertEquals(List.of(), index.search("tags", null, "", 25));
+    }
+
+    @Test
+    void rejectsNamesAndValuesOutsideDiscordsLimits() {
+        index.put("tags", null, "x".repeat(100));
+        assertThrows(IllegalArgumentException.class, () -> index.put("tags", null, "x".repeat(101)));
+        assertThrows(IllegalArgumentException.class, () -> index.put("tags", null, ""));
+        assertThrows(IllegalArgumentException.class, () -> index.put("tags", null, "name", "v".repeat(101)));
+        assertThrows(IllegalArgumentException.class, () -> index.replaceAll("tags", null, List.of("a", "b"), List.of("1")));
+    }
+}
@@ -0,0 +1,118 @@
+package com.myceliumbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountersTest {
+    @TempDir
+    Path directory;
+
+    private DatabaseManager dbManager;
+    private Counters counters;
+
+    @BeforeEach
+    void setUp() {
+        dbManager = new DatabaseManager(directory.resolve("bot.db").toString());
+        counters = new Counters(dbManager);
+    }
+
+    @Test
+    void readsCombineStoredAndPendingValues() {
+        counters.add("xp", "1", "2", 5);
+        assertEquals(5, counters.get("xp", "1", "2"));
+
+        counters.flush();
+        counters.add("xp", "1", "2", 3);
+        assertEquals(8, counters.get("xp", "1", "2"));
+        assertEquals(5, stored("xp", "1", "2"));
+
+        counters.flush();
+        assertEquals(8, counters.get("xp", "1", "2"));
+        assertEquals(8, stored("xp", "1", "2"));
+    }
+
+    @Test
+    void lastSeenSurvivesAFlush() {
+        assertEquals(0, counters.lastSeen("messages", "1", "2"));
+        long before = System.currentTimeMillis();
+        counters.touch("messages", "1", "2");
+        counters.flush();
+        counters.increment("messages", "1", "2");
+
+        long lastSeen = counters.lastSeen("messages", "1", "2");
+        assertTrue(lastSeen >= before && lastSeen <= System.currentTimeMillis(), "last seen " + lastSeen);
+        assertEquals(1, counters.get("messages", "1", "2"));
+    }
+
+    /**
+     * A read that overlaps a flush must count every update exactly once: never missing the
+     * rows being written, and never adding them to the stored value a second time.
+     */
+    @Test
+    void readsDuringFlushesNeitherMissNorDoubleCount() throws InterruptedException {
+        int updates = 20_000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= updates; i++) {
+                counters.increment("messages", "1", "2");
+                if (i % 500 == 0) counters.flush();
+            }
+        });
+        Thread reader = new Thread(() -> {
+            long previous = 0;
+            while (writer.isAlive() && failure.get() == null) {
+                long value = counters.get("messages", "1", "2");
+                if (value < previous || value > updates) {
+                    failure.set("read " + value + " after " + previous);
+                }
+                previous = value;
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(updates, counters.get("messages", "1", "2"));
+        counters.flush();
+        assertEquals(updates, stored("messages", "1", "2"));
+    }
+
+    @Test
+    void topMergesPendingChangesIntoTheStoredRanking() throws Exception {
+        counters.add("xp", "1", "10", 5);
+        counters.add("xp", "1", "11", 3);
+        counters.add("xp", "1", "12", 1);
+        counters.add("xp", "9", "13", 100);
+        counters.flush();
+        counters.add("xp", "1", "11", 4);
+
+        JsonNode top = new ObjectMapper().readTree(counters.top("xp", "1", 2));
+        List<String> ranking = new ArrayList<>();
+        top.forEach(row -> ranking.add(row.get("user_id").asText() + "=" + row.get("value").asText()));
+        assertEquals(List.of("11=7", "10=5"), ranking);
+    }
+
+    private long stored(String name, String guildId, String userId) {
+        String rows = dbManager.query("SELECT value FROM counters WHERE name = ? AND guild_id = ? AND user_id = ?", name, guildId, userId);
+        try {
+            JsonNode row = new ObjectMapper().readTree(rows).path(0);
+            return row.isMissingNode() ? 0 : row.get("value").asLong();
+        } catch (Exception e) {
+            throw new AssertionError("Unexpected query result " + rows, e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.myceliumbot;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The migrations and the triggers that keep the case summaries and the full-text index in sync with mod_logs.
+ */
+class DatabaseManagerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private DatabaseManager dbManager;
+    private ModLog modLog;
+
+    @BeforeEach
+    void setUp() {
+        dbManager = new DatabaseManager(directory.resolve("bot.db").toString());
+        modLog = new ModLog(dbManager);
+    }
+
+    @Test
+    void migrationsRunOnce() throws Exception {
+        modLog.record("1", "100", "200", "BAN", "first");
+        DatabaseManager reopened = new DatabaseManager(directory.resolve("bot.db").toString());
+
+        assertEquals("3", mapper.readTree(reopened.query("PRAGMA user_version")).path(0).get("user_version").asText());
+        assertEquals(Map.of("BAN", 1L), counts(new ModLog(reopened).guildSummary("1")));
+    }
+
+    @Test
+    void summariesFollowInsertsUpdatesAndDeletes() throws Exception {
+        long ban = modLog.record("1", "100", "200", "BAN", null);
+        long kick = modLog.record("1", "100", "200", "KICK", null);
+        modLog.record("1", "100", "201", "BAN", null);
+        modLog.record("2", "100", "200", "BAN", null);
+
+        assertEquals(Map.of("BAN", 1L, "KICK", 1L), counts(modLog.summary("1", "200")));
+        assertEquals(Map.of("BAN", 2L, "KICK", 1L), counts(modLog.guildSummary("1")));
+
+        dbManager.execute("UPDATE mod_logs SET action = 'WARN' WHERE id = ?", kick);
+        assertEquals(Map.of("BAN", 1L, "WARN", 1L), counts(modLog.summary("1", "200")));
+        assertEquals(Map.of("BAN", 2L, "WARN", 1L), counts(modLog.guildSummary("1")));
+
+        dbManager.execute("DELETE FROM mod_logs WHERE id = ?", ban);
+        assertEquals(Map.of("WARN", 1L), counts(modLog.summary("1", "200")));
+        assertEquals(Map.of("BAN", 1L, "WARN", 1L), counts(modLog.guildSummary("1")));
+        assertEquals(Map.of("BAN", 1L), counts(modLog.guildSummary("2")));
+
+        dbManager.execute("DELETE FROM mod_logs WHERE guild_id = '1'");
+        assertEquals(Map.of(), counts(modLog.guildSummary("1")));
+        assertEquals("[]", dbManager.query("SELECT * FROM mod_log_summary WHERE guild_id = '1'"));
+    }
+
+    @Test
+    void searchFollowsReasonChanges() throws Exception {
+        long spam = modLog.record("1", "100", "200", "BAN", "Spamming invite links");
+        modLog.record("1", "100", "201", "KICK", "Raid account");
+        modLog.record("2", "100", "202", "BAN", "invite spam in another guild");
+
+        assertEquals(List.of(spam), ids(modLog.search("1", "invite", 0, 10)));
+        assertEquals(List.of(spam), ids(modLog.search("1", "spamming inv", 0, 10)));
+
+        dbManager.execute("UPDATE mod_logs SET reason = 'Alt account' WHERE id = ?", spam);
+        assertEquals(List.of(), ids(modLog.search("1", "invite", 0, 10)));
+        assertEquals(List.of(spam), ids(modLog.search("1", "alt", 0, 10)));
+        assertEquals(2, ids(modLog.search("1", "account", 0, 10)).size());
+
+        dbManager.execute("DELETE FROM mod_logs WHERE id = ?", spam);
+        assertEquals(List.of(), ids(modLog.search("1", "alt", 0, 10)));
+    }
+
+    private Map<String, Long> counts(String json) throws Exception {
+        return mapper.readValue(json, new TypeReference<Map<String, Long>>() {});
+    }
+
+    private List<Long> ids(String json) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode row : mapper.readTree(json)) ids.add(row.get("id").asLong());
+        return ids;
+    }
+}
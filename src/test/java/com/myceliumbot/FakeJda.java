@@ -0,0 +1,331 @@
+package com.myceliumbot;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.SelfUser;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.unions.GuildMessageChannelUnion;
+import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.SlashCommandInteraction;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An offline stand-in for JDA, used by the {@link LoadHarness}. Every entity is a dynamic proxy:
+ * identity methods (ids, names, the guild, author and channel) return fixed values, and everything
+ * else returns a harmless default or another proxy, so scripts can walk any chain of JDA calls.
+ *
+ * Nothing is sent to Discord. Queuing or completing a {@link RestAction} is counted and succeeds
+ * immediately with a null result.
+ */
+class FakeJda {
+    private static final OffsetDateTime CREATED = OffsetDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final String AVATAR_URL = "https://cdn.discordapp.com/embed/avatars/0.png";
+
+    private final LongAdder restCalls = new LongAdder();
+    private final Map<Long, Guild> guilds = new ConcurrentHashMap<>();
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final Map<Long, MessageChannelUnion> channels = new ConcurrentHashMap<>();
+    private final Map<String, Member> members = new ConcurrentHashMap<>();
+    private final JDA jda;
+    private SelfUser selfUser;
+
+    FakeJda() {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getGatewayPing", 42L);
+        answers.put("getStatus", JDA.Status.CONNECTED);
+        answers.put("getSelfUser", (Answer) args -> selfUser());
+        answers.put("getGuildById", (Answer) args -> args[0] instanceof String id ? guild(Long.parseLong(id)) : guild((Long) args[0]));
+        answers.put("getUserById", (Answer) args -> args[0] instanceof String id ? user(Long.parseLong(id)) : user((Long) args[0]));
+        this.jda = proxy(JDA.class, answers, Map.of());
+    }
+
+    JDA jda() {
+        return jda;
+    }
+
+    /**
+     * @return How many REST actions scripts and the core have queued or completed so far.
+     */
+    long restCalls() {
+        return restCalls.sum();
+    }
+
+    Guild guild(long id) {
+        return guilds.computeIfAbsent(id, k -> {
+            Map<String, Object> answers = identity(id, "guild-" + id);
+            answers.put("getMemberCount", 1000);
+            answers.put("getTextChannelsByName", (Answer) args -> List.of(textChannel(id)));
+            return proxy(Guild.class, answers, Map.of(JDA.class, jda));
+        });
+    }
+
+    User user(long id) {
+        return users.computeIfAbsent(id, k -> {
+            Map<String, Object> answers = identity(id, "user-" + id);
+            answers.put("getGlobalName", "user-" + id);
+            answers.put("getEffectiveName", "user-" + id);
+            answers.put("getAsMention", "<@" + id + ">");
+            answers.put("isBot", false);
+            return proxy(User.class, answers, Map.of(JDA.class, jda));
+        });
+    }
+
+    private synchronized SelfUser selfUser() {
+        if (selfUser == null) {
+            Map<String, Object> answers = identity(1, "mycelium");
+            answers.put("getAsMention", "<@1>");
+            answers.put("isBot", true);
+            selfUser = proxy(SelfUser.class, answers, Map.of(JDA.class, jda));
+        }
+        return selfUser;
+    }
+
+    Member member(long guildId, long userId) {
+        return members.computeIfAbsent(guildId + ":" + userId, k -> {
+            Map<String, Object> answers = identity(userId, "user-" + userId);
+            answers.put("getEffectiveName", "user-" + userId);
+            answers.put("getAsMention", "<@" + userId + ">");
+            answers.put("getTimeJoined", CREATED);
+            answers.put("hasPermission", true);
+            answers.put("getUser", user(userId));
+            answers.put("getGuild", guild(guildId));
+            return proxy(Member.class, answers, Map.of(JDA.class, jda, Guild.class, guild(guildId)));
+        });
+    }
+
+    MessageChannelUnion channel(long guildId, long channelId) {
+        return channels.computeIfAbsent(channelId, k -> {
+            Map<String, Object> answers = identity(channelId, "channel-" + channelId);
+            answers.put("getType", ChannelType.TEXT);
+            answers.put("getAsMention", "<#" + channelId + ">");
+            answers.put("getGuild", guild(guildId));
+            // Guild message events cast their channel to a guild channel
+            return proxy(MessageChannelUnion.class, answers, Map.of(JDA.class, jda, Guild.class, guild(guildId)), GuildMessageChannelUnion.class);
+        });
+    }
+
+    private TextChannel textChannel(long guildId) {
+        Map<String, Object> answers = identity(guildId, "general");
+        answers.put("getType", ChannelType.TEXT);
+        answers.put("getGuild", guild(guildId));
+        return proxy(TextChannel.class, answers, Map.of(JDA.class, jda, Guild.class, guild(guildId)));
+    }
+
+    Message message(long id, MessageChannelUnion channel, Member author, String content) {
+        Map<String, Object> answers = identity(id, null);
+        answers.put("getContentRaw", content);
+        answers.put("getContentDisplay", content);
+        answers.put("getContentStripped", content);
+        answers.put("getChannel", channel);
+        answers.put("getChannelType", ChannelType.TEXT);
+        answers.put("isFromGuild", true);
+        answers.put("getAuthor", author.getUser());
+        answers.put("getMember", author);
+        answers.put("getGuild", author.getGuild());
+        return proxy(Message.class, answers, Map.of(JDA.class, jda, Guild.class, author.getGuild()));
+    }
+
+    /**
+     * Creates a slash command interaction. Option values are given as strings and converted to the option's type;
+     * user options are resolved to members of the same guild.
+     */
+    SlashCommandInteraction interaction(long id, String command, MessageChannelUnion channel, Member member,
+                                        Map<String, OptionType> optionTypes, Map<String, String> optionValues) {
+        Guild guild = member.getGuild();
+        Map<Long, Object> resolved = new HashMap<>();
+        Map<String, DataObject> data = new HashMap<>();
+        Map<String, OptionMapping> options = new HashMap<>();
+        optionValues.forEach((name, value) -> {
+            OptionType type = optionTypes.getOrDefault(name, OptionType.STRING);
+            DataObject option = DataObject.empty().put("name", name).put("type", type.getKey());
+            switch (type) {
+                case INTEGER -> option.put("value", Long.parseLong(value));
+                case NUMBER -> option.put("value", Double.parseDouble(value));
+                case BOOLEAN -> option.put("value", Boolean.parseBoolean(value));
+                case USER, MENTIONABLE -> {
+                    option.put("value", value);
+                    resolved.put(Long.parseLong(value), member(guild.getIdLong(), Long.parseLong(value)));
+                }
+                default -> option.put("value", value);
+            }
+            data.put(name, option);
+        });
+        Object resolvedMap = resolved.isEmpty() ? null : troveMap(resolved);
+        data.forEach((name, option) -> options.put(name, optionMapping(option, resolvedMap, guild)));
+
+        Map<String, Object> answers = identity(id, command);
+        answers.put("getFullCommandName", command);
+        answers.put("getSubcommandName", null);
+        answers.put("getSubcommandGroup", null);
+        answers.put("getChannelType", ChannelType.TEXT);
+        answers.put("isFromGuild", true);
+        answers.put("getChannel", channel);
+        answers.put("getGuild", guild);
+        answers.put("getMember", member);
+        answers.put("getUser", member.getUser());
+        answers.put("getOptions", List.copyOf(options.values()));
+        answers.put("getOption", (Answer) args -> args.length == 1 ? options.get((String) args[0]) : null);
+        return proxy(SlashCommandInteraction.class, answers, Map.of(JDA.class, jda, Guild.class, guild));
+    }
+
+    /**
+     * Copies the resolved entities into the Trove map {@link OptionMapping} expects. Trove is only a
+     * runtime dependency of JDA, so it is used through reflection rather than compiled against.
+     */
+    private static Object troveMap(Map<Long, Object> entries) {
+        try {
+            Class<?> type = Class.forName("gnu.trove.map.hash.TLongObjectHashMap");
+            Object map = type.getConstructor().newInstance();
+            Method put = type.getMethod("put", long.class, Object.class);
+            for (Map.Entry<Long, Object> entry : entries.entrySet()) {
+                put.invoke(map, entry.getKey(), entry.getValue());
+            }
+            return map;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Trove is not on the classpath", e);
+        }
+    }
+
+    private OptionMapping optionMapping(DataObject option, Object resolved, Guild guild) {
+        try {
+            for (Constructor<?> constructor : OptionMapping.class.getConstructors()) {
+                if (constructor.getParameterCount() == 4) {
+                    return (OptionMapping) constructor.newInstance(option, resolved, jda, guild);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create option " + option.getString("name"), e);
+        }
+        throw new IllegalStateException("No usable OptionMapping constructor");
+    }
+
+    private static Map<String, Object> identity(long id, String name) {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getIdLong", id);
+        answers.put("getId", Long.toUnsignedString(id));
+        answers.put("getTimeCreated", CREATED);
+        if (name != null) answers.put("getName", name);
+        return answers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, Map<String, Object> answers, Map<Class<?>, Object> context, Class<?>... extraTypes) {
+        Class<?>[] types = new Class<?>[extraTypes.length + 1];
+        types[0] = type;
+        System.arraycopy(extraTypes, 0, types, 1, extraTypes.length);
+        return (T) Proxy.newProxyInstance(FakeJda.class.getClassLoader(), types, new Stub(type, answers, context));
+    }
+
+    /**
+     * Computes the value of a stubbed method from its arguments.
+     */
+    @FunctionalInterface
+    private interface Answer {
+        Object answer(Object[] args);
+    }
+
+    private class Stub implements InvocationHandler {
+        private final Class<?> type;
+        private final Map<String, Object> answers;
+        // Values returned by any method with the given return type, passed on to nested stubs
+        private final Map<Class<?>, Object> context;
+        private final Map<Method, Object> nested = new ConcurrentHashMap<>();
+
+        Stub(Class<?> type, Map<String, Object> answers, Map<Class<?>, Object> context) {
+            this.type = type;
+            this.answers = answers;
+            this.context = context;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Object[] arguments = args != null ? args : new Object[0];
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (name) {
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "Fake" + type.getSimpleName() + answers.getOrDefault("getId", "");
+                };
+            }
+            if (answers.containsKey(name)) {
+                Object answer = answers.get(name);
+                return answer instanceof Answer computed ? computed.answer(arguments) : answer;
+            }
+            if (RestAction.class.isAssignableFrom(method.getDeclaringClass())) {
+                if (name.startsWith("queue")) return queue(arguments);
+                if (name.startsWith("complete")) {
+                    restCalls.increment();
+                    return null;
+                }
+                if (name.startsWith("submit")) {
+                    restCalls.increment();
+                    return CompletableFuture.completedFuture(null);
+                }
+            }
+            return defaultValue(method);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object queue(Object[] args) {
+            restCalls.increment();
+            if (args.length > 0 && args[0] instanceof Consumer<?> success) {
+                try {
+                    ((Consumer<Object>) success).accept(null);
+                } catch (RuntimeException e) {
+                    // Callbacks written for real results may not cope with null
+                }
+            }
+            return null;
+        }
+
+        private Object defaultValue(Method method) {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == void.class) return null;
+            if (context.containsKey(returnType)) return context.get(returnType);
+            if (returnType == boolean.class) return false;
+            if (returnType == long.class) return 0L;
+            if (returnType == int.class) return 0;
+            if (returnType == double.class) return 0.0;
+            if (returnType == float.class) return 0f;
+            if (returnType == short.class) return (short) 0;
+            if (returnType == byte.class) return (byte) 0;
+            if (returnType == char.class) return '\0';
+            if (returnType == String.class) return method.getName().endsWith("Url") ? AVATAR_URL : "";
+            if (returnType == OffsetDateTime.class) return CREATED;
+            if (returnType.isEnum()) return returnType.getEnumConstants()[0];
+            if (returnType.isArray()) return Array.newInstance(returnType.getComponentType(), 0);
+            if (returnType == List.class || returnType == Collection.class) return List.of();
+            if (returnType == Set.class) return Set.of();
+            if (returnType == Map.class) return Map.of();
+            if (returnType.isInterface()) {
+                return nested.computeIfAbsent(method, m -> proxy(returnType, Map.of(), context));
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package com.myceliumbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load tests the scripts in the scripts directory without connecting to Discord.
+ * Synthetic or recorded slash commands, messages and member joins are fed to the real
+ * {@link CommandListener} and {@link EventManager} through a {@link FakeJda}, and the
+ * throughput, dispatch latency and allocation rate are reported at the end.
+ *
+ * Latency is measured from the time an event was scheduled to arrive until the command handler
+ * returned or every event handler it dispatched has finished, so a backlog on the
+ * dispatching thread shows up in the numbers instead of slowing down the offered load.
+ *
+ * Usage: {@code java -cp mycelium-bot.jar com.myceliumbot.LoadHarness [--option=value ...]}, see {@link #usage()}.
+ */
+public class LoadHarness {
+    private static final long GUILD_ID_BASE = 100_000L;
+    private static final long USER_ID_BASE = 1_000_000L;
+    private static final long RAIDER_ID_BASE = 9_000_000L;
+    private static final String[] MESSAGES = {
+            "hello mycelium", "gm everyone", "does anyone know how to fix this?",
+            "lol", "check out https://example.com/some/page", "brb", "that's what I said earlier"
+    };
+    private static final String SPAM_MESSAGE = "FREE NITRO https://discord.gift.example/claim https://discord.gift.example/claim";
+
+    private final Map<String, String> options;
+    private final FakeJda fake = new FakeJda();
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<String, Map<String, OptionType>> commandOptionTypes = new HashMap<>();
+    private final Map<String, List<OptionData>> commandOptions = new LinkedHashMap<>();
+    private ScriptManager scriptManager;
+    private CommandListener commandListener;
+    private EventManager eventManager;
+
+    // The run in progress; only touched by the thread that dispatches the traffic
+    private Run run;
+    // The dispatch in progress; only touched by the thread that dispatches the traffic
+    private Dispatch current;
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                usage();
+                return;
+            }
+            int split = arg.indexOf('=');
+            options.put(split > 0 ? arg.substring(2, split) : arg.substring(2), split > 0 ? arg.substring(split + 1) : "true");
+        }
+        if (options.containsKey("help")) {
+            usage();
+            return;
+        }
+        new LoadHarness(options).start();
+        // Script contexts and background services keep non-daemon threads alive
+        System.exit(0);
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage: LoadHarness [--option=value ...]
+                  --duration=30          Seconds of traffic to send
+                  --warmup=5             Seconds of traffic to send first, left out of the report
+                  --rate=200             Events per second
+                  --mix=message:80,command:15,join:5
+                                         Relative share of each event type
+                  --guilds=10            Number of guilds
+                  --users=1000           Number of distinct users
+                  --skew=1.0             Zipf exponent for picking guilds and users; 0 picks them uniformly
+                  --commands=ping,...    Commands to send; defaults to every command without subcommands
+                  --raid-at=10           Second at which a raid starts in the busiest guild; off by default
+                  --raid-size=200        Accounts joining during the raid, all within one second
+                  --raid-messages=5      Spam messages each raiding account sends after joining
+                  --replay=traffic.jsonl Send recorded traffic instead of synthetic traffic
+                  --database=path        Database file to use; defaults to a new temporary database
+                  --seed=42              Random seed
+                """);
+    }
+
+    private void start() throws IOException, InterruptedException {
+        BotConfig config;
+        if (options.containsKey("database")) {
+            config = BotConfig.override(Map.of("databasePath", options.get("database")));
+        } else {
+            Path database = Files.createTempFile("mycelium-load", ".db");
+            config = BotConfig.override(Map.of("databasePath", database.toString()));
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Paths.get(database + suffix).toFile().deleteOnExit();
+            }
+        }
+        System.out.println("Using database " + config.getDatabasePath());
+
+        DatabaseManager dbManager = new DatabaseManager();
+        scriptManager = new ScriptManager(dbManager, new HttpUtils());
+        ScriptServices services = new ScriptServices(dbManager);
+        services.bind(scriptManager);
+        for (SlashCommandData command : scriptManager.loadScripts()) {
+            if (!command.getSubcommands().isEmpty() || !command.getSubcommandGroups().isEmpty()) continue;
+            Map<String, OptionType> types = new HashMap<>();
+            command.getOptions().forEach(option -> types.put(option.getName(), option.getType()));
+            commandOptionTypes.put(command.getName(), types);
+            commandOptions.put(command.getName(), command.getOptions());
+        }
+        commandListener = new CommandListener(scriptManager, this::track);
+        eventManager = new EventManager(scriptManager, services.getMessageHistory(), this::track);
+
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "5"));
+        if (warmup > 0 && !options.containsKey("replay")) {
+            System.out.printf("Warming up for %.0f s...%n", warmup);
+            execute(synthetic(warmup, false, new Random(seed + 1)));
+        }
+
+        List<Traffic> traffic = options.containsKey("replay")
+                ? replay(Paths.get(options.get("replay")))
+                : synthetic(Double.parseDouble(options.getOrDefault("duration", "30")), true, new Random(seed));
+        System.out.printf("Sending %d events...%n", traffic.size());
+        report(execute(traffic), traffic);
+    }
+
+    /**
+     * Generates traffic at a fixed rate, with guilds and users picked from Zipf distributions.
+     */
+    private List<Traffic> synthetic(double seconds, boolean withRaid, Random random) {
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        int guildCount = Integer.parseInt(options.getOrDefault("guilds", "10"));
+        int userCount = Integer.parseInt(options.getOrDefault("users", "1000"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "1.0"));
+        Zipf guilds = new Zipf(guildCount, skew);
+        Zipf users = new Zipf(userCount, skew);
+
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : options.getOrDefault("mix", "message:80,command:15,join:5").split(",")) {
+            String[] parts = entry.split(":");
+            mix.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        int mixTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+        List<String> commands = options.containsKey("commands")
+                ? Arrays.asList(options.get("commands").split(","))
+                : new ArrayList<>(commandOptions.keySet());
+
+        List<Traffic> traffic = new ArrayList<>();
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long count = (long) (seconds * rate);
+        long nextJoiner = USER_ID_BASE + userCount;
+        for (long i = 0; i < count; i++) {
+            long at = i * interval;
+            long guild = GUILD_ID_BASE + guilds.next(random);
+            long user = USER_ID_BASE + users.next(random);
+            long channel = guild * 10 + random.nextInt(3);
+
+            String type = null;
+            int pick = random.nextInt(Math.max(1, mixTotal));
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                pick -= entry.getValue();
+                if (pick < 0) {
+                    type = entry.getKey();
+                    break;
+                }
+            }
+            if ("command".equals(type) && !commands.isEmpty()) {
+                String command = commands.get(random.nextInt(commands.size()));
+                traffic.add(new Traffic(at, "command", guild, user, channel, null, command, optionsFor(command, users, random)));
+            } else if ("join".equals(type)) {
+                traffic.add(new Traffic(at, "join", guild, nextJoiner++, channel, null, null, Map.of()));
+            } else {
+                traffic.add(new Traffic(at, "message", guild, user, channel, MESSAGES[random.nextInt(MESSAGES.length)], null, Map.of()));
+            }
+        }
+
+        if (withRaid && options.containsKey("raid-at")) {
+            long raidStart = (long) (Double.parseDouble(options.get("raid-at")) * TimeUnit.SECONDS.toNanos(1));
+            int raidSize = Integer.parseInt(options.getOrDefault("raid-size", "200"));
+            int raidMessages = Integer.parseInt(options.getOrDefault("raid-messages", "5"));
+            long guild = GUILD_ID_BASE;
+            for (int i = 0; i < raidSize; i++) {
+                long joinedAt = raidStart + TimeUnit.SECONDS.toNanos(1) * i / raidSize;
+                long raider = RAIDER_ID_BASE + i;
+                traffic.add(new Traffic(joinedAt, "join", guild, raider, guild * 10, null, null, Map.of()));
+                for (int m = 1; m <= raidMessages; m++) {
+                    long sentAt = joinedAt + TimeUnit.MILLISECONDS.toNanos(250) * m;
+                    traffic.add(new Traffic(sentAt, "message", guild, raider, guild * 10, SPAM_MESSAGE, null, Map.of()));
+                }
+            }
+            traffic.sort(Comparator.comparingLong(Traffic::at));
+        }
+        return traffic;
+    }
+
+    /**
+     * Fills in the required options of a command with plausible values.
+     */
+    private Map<String, String> optionsFor(String command, Zipf users, Random random) {
+        Map<String, String> values = new HashMap<>();
+        for (OptionData option : commandOptions.getOrDefault(command, List.of())) {
+            if (!option.isRequired()) continue;
+            switch (option.getType()) {
+                case USER, MENTIONABLE -> values.put(option.getName(), String.valueOf(USER_ID_BASE + users.next(random)));
+                case INTEGER, NUMBER -> values.put(option.getName(), "1");
+                case BOOLEAN -> values.put(option.getName(), "false");
+                case STRING -> values.put(option.getName(), option.getName().contains("duration") ? "10m" : "load test");
+                default -> { }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads recorded traffic, one JSON object per line, such as
+     * {"at": 1500, "type": "command", "guild": 1, "user": 2, "channel": 3, "command": "ban", "options": {"user": "4"}}.
+     * "at" is the time in milliseconds since the start of the recording.
+     */
+    private List<Traffic> replay(Path file) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Traffic> traffic = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode node = mapper.readTree(line);
+                Map<String, String> values = new HashMap<>();
+                node.path("options").fields().forEachRemaining(field -> values.put(field.getKey(), field.getValue().asText()));
+                long guild = node.path("guild").asLong(GUILD_ID_BASE);
+                traffic.add(new Traffic(
+                        TimeUnit.MILLISECONDS.toNanos(node.path("at").asLong()),
+                        node.path("type").asText("message"),
+                        guild,
+                        node.path("user").asLong(USER_ID_BASE),
+                        node.path("channel").asLong(guild * 10),
+                        node.path("content").asText(""),
+                        node.path("command").asText(null),
+                        values));
+            }
+        }
+        traffic.sort(Comparator.comparingLong(Traffic::at));
+        return traffic;
+    }
+
+    /**
+     * Sends the traffic on the calling thread, the way the gateway thread would, and waits for all handlers to finish.
+     */
+    private Run execute(List<Traffic> traffic) throws InterruptedException {
+        run = new Run();
+        JDA jda = fake.jda();
+        long restCallsBefore = fake.restCalls();
+        long allocatedBefore = allocatedBytes();
+        run.start = System.nanoTime();
+
+        long responseNumber = 0;
+        for (Traffic event : traffic) {
+            long scheduled = run.start + event.at();
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            current = new Dispatch(event.type(), scheduled);
+            try {
+                Member member = fake.member(event.guild(), event.user());
+                MessageChannelUnion channel = fake.channel(event.guild(), event.channel());
+                switch (event.type()) {
+                    case "command" -> commandListener.onSlashCommandInteraction(new SlashCommandInteractionEvent(jda, responseNumber,
+                            fake.interaction(responseNumber, event.command(), channel, member,
+                                    commandOptionTypes.getOrDefault(event.command(), Map.of()), event.options())));
+                    case "join" -> eventManager.onGuildMemberJoin(new GuildMemberJoinEvent(jda, responseNumber, member));
+                    default -> eventManager.onMessageReceived(new MessageReceivedEvent(jda, responseNumber,
+                            fake.message(responseNumber, channel, member, event.content())));
+                }
+            } catch (RuntimeException e) {
+                run.errors.increment();
+            } finally {
+                current.finish();
+                current = null;
+            }
+            responseNumber++;
+        }
+
+        // Give the last event handlers a little while to finish
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (run.completed.sum() < traffic.size() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        run.allocated = allocatedBytes() - allocatedBefore;
+        run.restCalls = fake.restCalls() - restCallsBefore;
+        return run;
+    }
+
+    /**
+     * Keeps the current event's dispatch open until all of its command or event handlers have finished.
+     */
+    private void track(CompletableFuture<Void> handled) {
+        Dispatch dispatch = current;
+        dispatch.fork();
+        handled.whenComplete((result, error) -> dispatch.finish());
+    }
+
+    /**
+     * What all live threads have allocated so far. Handlers run on the bot's own thread pool, so this
+     * covers the dispatching thread, the handler threads and the background services together.
+     */
+    private long allocatedBytes() {
+        if (!threads.isThreadAllocatedMemorySupported()) return 0;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private void report(Run result, List<Traffic> traffic) {
+        double seconds = Math.max(1, result.lastCompletion.get() - result.start) / 1e9;
+        double offered = traffic.isEmpty() ? 0 : traffic.size() / Math.max(1e-9, traffic.get(traffic.size() - 1).at() / 1e9);
+        long completed = result.completed.sum();
+
+        System.out.println();
+        System.out.printf("Sent %d events in %.1f s: %.1f events/s offered, %.1f events/s handled%n",
+                traffic.size(), seconds, offered, completed / seconds);
+        if (completed < traffic.size()) {
+            System.out.printf("Warning: %d events were still being handled when the run ended%n", traffic.size() - completed);
+        }
+        if (result.errors.sum() > 0) {
+            System.out.printf("Warning: %d events failed to dispatch%n", result.errors.sum());
+        }
+        System.out.printf("%-10s %8s %10s %10s %10s%n", "type", "count", "p50 ms", "p99 ms", "max ms");
+        Latencies all = new Latencies();
+        result.latencies.forEach((type, latencies) -> {
+            printLatencies(type, latencies);
+            all.addAll(latencies);
+        });
+        printLatencies("all", all);
+
+        if (threads.isThreadAllocatedMemorySupported()) {
+            long allocated = result.allocated;
+            System.out.printf("Allocated %.1f MB: %.1f MB/s, %.1f KB per event%n",
+                    allocated / 1e6, allocated / 1e6 / seconds, completed > 0 ? allocated / 1e3 / completed : 0);
+        } else {
+            System.out.println("Allocation rate not available on this JVM");
+        }
+        System.out.printf("Discord REST calls (stubbed): %d%n", result.restCalls);
+
+        System.out.println();
+        System.out.println("Handlers, including the warm-up:");
+        System.out.printf("%-40s %8s %8s %8s %10s %10s%n", "script/handler", "calls", "errors", "timeouts", "avg ms", "max ms");
+        scriptManager.getHandlerStats().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    ScriptManager.HandlerStats stats = entry.getValue();
+                    System.out.printf("%-40s %8d %8d %8d %10.2f %10.2f%n", entry.getKey(), stats.getCalls(), stats.getErrors(),
+                            stats.getTimeouts(), stats.getTotalNanos() / 1e6 / Math.max(1, stats.getCalls()), stats.getMaxNanos() / 1e6);
+                });
+    }
+
+    private static void printLatencies(String type, Latencies latencies) {
+        System.out.printf("%-10s %8d %10.2f %10.2f %10.2f%n", type, latencies.count(),
+                latencies.percentile(0.50) / 1e6, latencies.percentile(0.99) / 1e6, latencies.percentile(1.0) / 1e6);
+    }
+
+    private record Traffic(long at, String type, long guild, long user, long channel,
+                           String content, String command, Map<String, String> options) {
+    }
+
+    /**
+     * The counters of one pass over the traffic.
+     */
+    private static class Run {
+        final Map<String, Latencies> latencies = new LinkedHashMap<>();
+        final LongAdder completed = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicLong lastCompletion = new AtomicLong();
+        long start;
+        long allocated;
+        long restCalls;
+
+        synchronized Latencies latenciesFor(String type) {
+            return latencies.computeIfAbsent(type, k -> new Latencies());
+        }
+    }
+
+    /**
+     * One event in flight. It completes when the listener has returned and every handler it dispatched has finished.
+     */
+    private class Dispatch {
+        final Run owner = run;
+        final Latencies latencies;
+        final long scheduled;
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        Dispatch(String type, long scheduled) {
+            this.latencies = owner.latenciesFor(type);
+            this.scheduled = scheduled;
+        }
+
+        void fork() {
+            pending.incrementAndGet();
+        }
+
+        void finish() {
+            if (pending.decrementAndGet() > 0) return;
+            long now = System.nanoTime();
+            latencies.add(now - scheduled);
+            owner.lastCompletion.accumulateAndGet(now, Math::max);
+            owner.completed.increment();
+        }
+    }
+
+    private static class Latencies {
+        private long[] samples = new long[1024];
+        private int count;
+
+        synchronized void add(long nanos) {
+            if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos;
+        }
+
+        synchronized void addAll(Latencies other) {
+            synchronized (other) {
+                for (int i = 0; i < other.count; i++) add(other.samples[i]);
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized long percentile(double fraction) {
+            if (count == 0) return 0;
+            Arrays.sort(samples, 0, count);
+            int index = (int) Math.ceil(fraction * count) - 1;
+            return samples[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    /**
+     * Picks indexes in [0, n) where index k is chosen with a probability proportional to 1 / (k + 1)^skew.
+     */
+    private static class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double skew) {
+            cumulative = new double[Math.max(1, n)];
+            double sum = 0;
+            for (int k = 0; k < cumulative.length; k++) {
+                sum += 1 / Math.pow(k + 1, skew);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < cumulative.length; k++) cumulative[k] /= sum;
+        }
+
+        int next(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
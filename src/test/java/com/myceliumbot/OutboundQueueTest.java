@@ -0,0 +1,40 @@
+package com.myceliumbot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutboundQueueTest {
+    private final FakeJda fake = new FakeJda();
+    private final OutboundQueue queue = new OutboundQueue();
+
+    @Test
+    void mergesMessagesPerChannel() {
+        for (int i = 0; i < 5; i++) queue.sendMessage(fake.channel(1, 10), "welcome " + i);
+        queue.sendMessage(fake.channel(1, 11), "hello");
+        queue.shutdown();
+
+        assertEquals(2, fake.restCalls());
+    }
+
+    @Test
+    void splitsMergedMessagesAtDiscordsLengthLimit() {
+        queue.sendMessage(fake.channel(1, 10), "a".repeat(1500));
+        queue.sendMessage(fake.channel(1, 10), "b".repeat(1500));
+        queue.sendMessage(fake.channel(1, 10), "c".repeat(100));
+        queue.shutdown();
+
+        assertEquals(2, fake.restCalls());
+    }
+
+    @Test
+    void bansWithTheSameReasonBecomeOneBulkBan() {
+        for (long user = 100; user < 150; user++) queue.ban(fake.guild(1), fake.user(user), "raid");
+        queue.ban(fake.guild(1), fake.user(100), "raid");
+        queue.ban(fake.guild(1), fake.user(200), "spam");
+        queue.ban(fake.guild(2), fake.user(300), "raid");
+        queue.shutdown();
+
+        assertEquals(3, fake.restCalls());
+    }
+}
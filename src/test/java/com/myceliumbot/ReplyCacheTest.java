@@ -0,0 +1,79 @@
+package com.myceliumbot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplyCacheTest {
+    // Entry overhead, a one-character key and ten characters of content
+    private static final long ENTRY_WEIGHT = 64 + 1 + 10;
+
+    @Test
+    void evictsTheLeastRecentlyUsedReply() {
+        ReplyCache cache = new ReplyCache(3 * ENTRY_WEIGHT);
+        cache.put("a", reply("aaaaaaaaaa"), 60);
+        cache.put("b", reply("bbbbbbbbbb"), 60);
+        cache.put("c", reply("cccccccccc"), 60);
+        assertNotNull(cache.get("a"));
+
+        cache.put("d", reply("dddddddddd"), 60);
+        assertNull(cache.get("b"));
+        assertEquals("aaaaaaaaaa", cache.get("a").content());
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    void weighsRepliesByTheirSize() {
+        ReplyCache cache = new ReplyCache(3 * ENTRY_WEIGHT);
+        cache.put("a", reply("aaaaaaaaaa"), 60);
+        cache.put("b", reply("bbbbbbbbbb"), 60);
+        // Weighs more than two small replies, so both older ones have to go
+        cache.put("c", reply("c".repeat(11 + (int) ENTRY_WEIGHT)), 60);
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void replacingAReplyReleasesItsOldWeight() {
+        ReplyCache cache = new ReplyCache(2 * ENTRY_WEIGHT);
+        cache.put("a", reply("aaaaaaaaaa"), 60);
+        for (int i = 0; i < 10; i++) cache.put("b", reply("bbbbbbbbbb"), 60);
+
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    void skipsRepliesThatCanNeverFit() {
+        ReplyCache cache = new ReplyCache(ENTRY_WEIGHT);
+        cache.put("a", reply("aaaaaaaaaa"), 60);
+        cache.put("b", reply("b".repeat(11)), 60);
+        cache.put("c", reply("cccccccccc"), 0);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNull(cache.get("c"));
+    }
+
+    @Test
+    void shrinkingTheLimitEvictsRightAway() {
+        ReplyCache cache = new ReplyCache(3 * ENTRY_WEIGHT);
+        cache.put("a", reply("aaaaaaaaaa"), 60);
+        cache.put("b", reply("bbbbbbbbbb"), 60);
+        cache.put("c", reply("cccccccccc"), 60);
+
+        cache.setMaxWeight(ENTRY_WEIGHT);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    private static ReplyCache.Reply reply(String content) {
+        return ReplyCache.Reply.of(content);
+    }
+}